@@ -0,0 +1,158 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * BENCHMARK ACTIVITY
+ * Runs EngineBenchmark on the phone and shows the numbers. Debug builds only, it's opened from
+ * the Benchmark button on WelcomeActivity.
+ *
+ * The benchmark runs on its own thread so the screen keeps responding. The run belongs to the
+ * process rather than to the activity, so rotating the phone part way through brings up a new
+ * activity that shows the same run instead of letting a second one start alongside it and spoil
+ * both sets of timings. Each run is also written to a CSV in the app's external files, so runs
+ * from different builds can be pulled off and compared:
+ *   adb pull /sdcard/Android/data/com.google.ar.sceneform.samples.hellosceneform/files/benchmarks
+ */
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BenchmarkActivity extends AppCompatActivity implements View.OnClickListener {
+    private static final String TAG = BenchmarkActivity.class.getSimpleName();
+    private static final String RESULTS_DIR_NAME = "benchmarks";
+
+    // ART keeps its GC numbers as strings in Debug.getRuntimeStat
+    private static final EngineBenchmark.GcStats ART_GC = new EngineBenchmark.GcStats() {
+        @Override
+        public long count() {
+            return runtimeStat("art.gc.gc-count");
+        }
+
+        @Override
+        public long timeMillis() {
+            return runtimeStat("art.gc.gc-time");
+        }
+    };
+
+    private static long runtimeStat(String name) {
+        try {
+            return Long.parseLong(Debug.getRuntimeStat(name));
+        } catch (NumberFormatException e) {
+            return 0;   // not kept on this phone
+        }
+    }
+
+    // The run outlives any one activity, so it's kept here. Only touched on the main thread
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static boolean isRunning = false;
+    private static CharSequence shownText;          // what the results should say, or null for the layout's text
+    private static BenchmarkActivity current;       // the activity on screen, or null while there isn't one
+
+    private View runButton;
+    private TextView resultsText;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_benchmark);
+        runButton = findViewById(R.id.benchmark_run);
+        runButton.setOnClickListener(this);
+        resultsText = findViewById(R.id.benchmark_results);
+        current = this;
+        showState();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (current == this) {
+            current = null;     // a run that finishes now waits for the next activity to show it
+        }
+    }
+
+    /**
+     * onClick: Starts a run, unless one is going already, maybe from before the phone was rotated
+     */
+    @Override
+    public void onClick(View view) {
+        if (isRunning) {
+            return;
+        }
+        isRunning = true;
+        show("Running " + EngineBenchmark.SIZES.length + " board sizes, " + EngineBenchmark.DEFAULT_STEPS + " steps each...");
+        Context appContext = getApplicationContext();   // not the activity, which might be gone by the time it's done
+        Thread thread = new Thread(() -> runBenchmark(appContext), "engine-benchmark");
+        thread.start();
+    }
+
+    private static void show(CharSequence text) {
+        shownText = text;
+        if (current != null) {
+            current.showState();
+        }
+    }
+
+    private void showState() {
+        if (shownText != null) {
+            resultsText.setText(shownText);
+        }
+        runButton.setEnabled(!isRunning);
+    }
+
+    private static void runBenchmark(Context context) {
+        List<String> about = new ArrayList<>();
+        about.add("device " + Build.MANUFACTURER + " " + Build.MODEL + ", Android API " + Build.VERSION.SDK_INT);
+        about.add("build " + BuildConfig.VERSION_NAME + " (" + BuildConfig.VERSION_CODE + ") " + BuildConfig.BUILD_TYPE);
+        about.add("clock " + EngineBenchmark.measureClock() + " ns per System.nanoTime, every latency includes it");
+
+        List<EngineBenchmark.Result> results = new EngineBenchmark(ART_GC)
+            .runAll(EngineBenchmark.DEFAULT_STEPS, EngineBenchmark.DEFAULT_WARMUP_STEPS);
+
+        StringBuilder text = new StringBuilder();
+        for (String line : about) {
+            text.append(line).append('\n');
+        }
+        for (EngineBenchmark.Result result : results) {
+            text.append('\n').append(result).append('\n');
+        }
+        File file = exportResults(context, about, results);
+        text.append('\n').append(file != null ? "Saved to " + file : "Couldn't save the results, see the log");
+
+        mainHandler.post(() -> {
+            isRunning = false;
+            show(text);
+        });
+    }
+
+    /**
+     * exportResults: Writes a run to its own CSV file
+     * @return the file, or null if it couldn't be written
+     */
+    private static File exportResults(Context context, List<String> about, List<EngineBenchmark.Result> results) {
+        File dir = context.getExternalFilesDir(RESULTS_DIR_NAME);
+        if (dir == null) {
+            dir = new File(context.getFilesDir(), RESULTS_DIR_NAME);    // no external storage right now
+        }
+        dir.mkdirs();
+        File file = new File(dir, "benchmark-" + System.currentTimeMillis() + ".csv");
+        try {
+            EngineBenchmark.writeCsv(file, about, results);
+            return file;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to save benchmark results", e);
+            return null;
+        }
+    }
+}
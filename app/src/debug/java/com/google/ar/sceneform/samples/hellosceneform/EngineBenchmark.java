@@ -0,0 +1,287 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * ENGINE BENCHMARK
+ * Plays a fixed script through GameEngine with nothing on screen, so we can see how fast the
+ * rules are on a real phone under ART rather than on a desktop JVM. Debug builds only, see
+ * BenchmarkActivity.
+ *
+ * Every step is a tick or a press, picked from a fixed seed so every build plays exactly the same
+ * games. Random presses on their own almost never fill a whole layer, so every GARBAGE_EVERY blocks
+ * that land send a garbage layer in under the board like a versus match does. Garbage layers have
+ * one hole each, and blocks falling into the holes clear them. After each step the board is
+ * diffed against what was "on screen" the same way Game.setVisibleBlocks does it, without the
+ * nodes. Each step is timed on its own and put in one of three piles:
+ *   fall   a tick that just moved the block down
+ *   lock   a tick that landed the block, including clearing layers and bringing up the next one
+ *   move   a press, whether or not the block could move
+ * Every time includes reading the clock, which costs a few tens of nanoseconds on most phones.
+ * measureClock says how much on this one.
+ *
+ * Everything the timed loop needs is made before it starts. The engine shouldn't allocate either,
+ * so the GC count for a run should be 0. If it isn't, something in the tick path has started
+ * making garbage.
+ */
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class EngineBenchmark {
+
+    public static final int[][] SIZES = {{4, 6, 4}, {6, 10, 6}, {8, 12, 8}};     // the normal board, then bigger ones
+    public static final int DEFAULT_STEPS = 200000;
+    public static final int DEFAULT_WARMUP_STEPS = 50000;   // gives the JIT a go at everything before we start timing
+    public static final long SEED = 20190601L;
+    public static final int GARBAGE_EVERY = 2;
+
+    // The piles a step's time goes in
+    public static final int FALL = 0;
+    public static final int LOCK = 1;
+    public static final int MOVE = 2;
+    public static final String[] KIND_NAMES = {"fall", "lock", "move"};
+
+    /**
+     * GcStats: Where the GC numbers come from. ART and a desktop JVM keep them in different places
+     */
+    public interface GcStats {
+        long count();
+        long timeMillis();
+    }
+
+    /**
+     * Result: How one board size did
+     */
+    public static class Result {
+        public int width;
+        public int height;
+        public int depth;
+        public int steps;
+        public long elapsedNanos;       // the whole run, including starting new games
+        public int games;               // games started, the first one included
+        public int clears;              // layers cleared
+        public long cellsChanged;       // cells the render diff would have shown or hidden
+        public long gcCount;
+        public long gcMillis;
+        public final int[] counts = new int[KIND_NAMES.length];     // steps in each pile
+        public final long[] p50 = new long[KIND_NAMES.length];      // nanoseconds
+        public final long[] p99 = new long[KIND_NAMES.length];
+
+        public double stepsPerSecond() {
+            return elapsedNanos == 0 ? 0 : steps * 1e9 / elapsedNanos;
+        }
+
+        public String boardName() {
+            return width + "x" + height + "x" + depth;
+        }
+
+        public static String csvHeader() {
+            StringBuilder header = new StringBuilder("board,steps,steps_per_sec,games,clears,cells_changed,gc_count,gc_ms");
+            for (String kind : KIND_NAMES) {
+                header.append(',').append(kind).append("_n,").append(kind).append("_p50_ns,").append(kind).append("_p99_ns");
+            }
+            return header.toString();
+        }
+
+        public String toCsv() {
+            StringBuilder line = new StringBuilder();
+            line.append(boardName()).append(',').append(steps).append(',').append(Math.round(stepsPerSecond()))
+                .append(',').append(games).append(',').append(clears).append(',').append(cellsChanged)
+                .append(',').append(gcCount).append(',').append(gcMillis);
+            for (int kind = 0; kind < KIND_NAMES.length; kind++) {
+                line.append(',').append(counts[kind]).append(',').append(p50[kind]).append(',').append(p99[kind]);
+            }
+            return line.toString();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(boardName()).append(": ").append(Math.round(stepsPerSecond())).append(" steps/s, ")
+                .append(games).append(" games, ").append(clears).append(" clears, ")
+                .append(gcCount).append(" GCs (").append(gcMillis).append(" ms)");
+            for (int kind = 0; kind < KIND_NAMES.length; kind++) {
+                text.append("\n  ").append(KIND_NAMES[kind]).append(": ").append(counts[kind]).append(" steps, p50 ")
+                    .append(p50[kind]).append(" ns, p99 ").append(p99[kind]).append(" ns");
+            }
+            return text.toString();
+        }
+    }
+
+    private final GcStats gc;
+
+    /**
+     * EngineBenchmark: Makes a benchmark
+     * @param gc reads the GC numbers, or null to leave them at 0
+     */
+    public EngineBenchmark(GcStats gc) {
+        this.gc = gc;
+    }
+
+    /**
+     * script: The steps to play. About half are ticks, so blocks get moved around on the way down and the board fills up
+     * @param steps how many
+     * @param seed decides the steps
+     * @return 0 for a tick, otherwise the PlayerInput command to press
+     */
+    public static byte[] script(int steps, long seed) {
+        byte[] script = new byte[steps];
+        Random random = new Random(seed);
+        int[] presses = {PlayerInput.LEFT, PlayerInput.RIGHT, PlayerInput.FORWARD, PlayerInput.BACKWARD};
+        for (int i = 0; i < steps; i++) {
+            script[i] = (byte) (random.nextBoolean() ? 0 : presses[random.nextInt(presses.length)]);
+        }
+        return script;
+    }
+
+    /**
+     * run: Plays the script on one board size. Games that end are started again with the next seed
+     * @param size width, height and depth
+     * @param steps how many steps to time
+     * @return how it did
+     */
+    public Result run(int[] size, int steps) {
+        byte[] script = script(steps, SEED);
+        long[][] times = new long[KIND_NAMES.length][steps];
+        Result result = new Result();
+        result.width = size[0];
+        result.height = size[1];
+        result.depth = size[2];
+        result.steps = steps;
+        GameEngine engine = new GameEngine(size[0], size[1], size[2], SEED);
+        long[] rendered = new long[engine.getRenderableHeight()];
+        long sink = 0;
+
+        long gcCountBefore = gc != null ? gc.count() : 0;
+        long gcMillisBefore = gc != null ? gc.timeMillis() : 0;
+        long start = System.nanoTime();
+        engine.start(SEED);
+        result.games = 1;
+        for (int i = 0; i < steps; i++) {
+            long before = System.nanoTime();
+            int command = script[i];
+            int kind = MOVE;
+            switch (command) {
+                case 0:
+                    engine.tick();
+                    kind = engine.hasJustLanded() ? LOCK : FALL;
+                    break;
+                case PlayerInput.LEFT:
+                    engine.moveLeft();
+                    break;
+                case PlayerInput.RIGHT:
+                    engine.moveRight();
+                    break;
+                case PlayerInput.FORWARD:
+                    engine.moveForward();
+                    break;
+                default:
+                    engine.moveBackward();
+                    break;
+            }
+
+            // The same diff as Game.setVisibleBlocks, minus the nodes
+            for (int y = 0; y < rendered.length; y++) {
+                long shown = engine.getBoardLayer(y) | engine.getFallingLayer(y);
+                long changed = shown ^ rendered[y];
+                rendered[y] = shown;
+                while (changed != 0) {
+                    int bit = Long.numberOfTrailingZeros(changed);
+                    changed &= changed - 1;
+                    sink += bit / result.depth + bit % result.depth;    // the x and z Game would look the node up with
+                    result.cellsChanged++;
+                }
+            }
+            times[kind][result.counts[kind]++] = System.nanoTime() - before;
+
+            result.clears += engine.getLastClearedLayers();
+            if (kind == LOCK && result.counts[LOCK] % GARBAGE_EVERY == 0) {
+                engine.queueGarbage(1);
+            }
+            if (!engine.isStarted()) {
+                engine.start(SEED + result.games);
+                result.games++;
+            }
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        if (gc != null) {
+            result.gcCount = gc.count() - gcCountBefore;
+            result.gcMillis = gc.timeMillis() - gcMillisBefore;
+        }
+        if (sink == 42) {
+            result.cellsChanged++;  // never happens, it just stops the diff being optimised away
+        }
+
+        for (int kind = 0; kind < KIND_NAMES.length; kind++) {
+            long[] sorted = Arrays.copyOf(times[kind], result.counts[kind]);
+            Arrays.sort(sorted);
+            result.p50[kind] = percentile(sorted, 50);
+            result.p99[kind] = percentile(sorted, 99);
+        }
+        return result;
+    }
+
+    /**
+     * runAll: Warms up on every board size, then times each one
+     * @param steps steps to time on each size
+     * @param warmupSteps steps to play first without keeping the results
+     * @return a result for each of SIZES, in order
+     */
+    public List<Result> runAll(int steps, int warmupSteps) {
+        for (int[] size : SIZES) {
+            run(size, warmupSteps);
+        }
+        List<Result> results = new ArrayList<>();
+        for (int[] size : SIZES) {
+            results.add(run(size, steps));
+        }
+        return results;
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, (long) sorted.length * percent / 100)];
+    }
+
+    /**
+     * measureClock: How long reading the clock takes, which every step's time includes
+     * @return the median time between two back to back System.nanoTime calls
+     */
+    public static long measureClock() {
+        long[] gaps = new long[10001];
+        for (int i = 0; i < gaps.length; i++) {
+            long before = System.nanoTime();
+            gaps[i] = System.nanoTime() - before;
+        }
+        Arrays.sort(gaps);
+        return gaps[gaps.length / 2];
+    }
+
+    /**
+     * writeCsv: Writes the results somewhere they can be pulled off and compared with another build's
+     * @param file where to write them
+     * @param about lines saying what ran it, like the phone and the build. Each is written as a # comment at the top
+     * @param results from runAll
+     */
+    public static void writeCsv(File file, List<String> about, List<Result> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            for (String line : about) {
+                out.println("# " + line);
+            }
+            out.println(Result.csvHeader());
+            for (Result result : results) {
+                out.println(result.toCsv());
+            }
+            if (out.checkError()) {     // PrintWriter keeps quiet about write errors, so ask
+                throw new IOException("Unable to write " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * BLOCK RENDERABLES
+ * Loads the 3D models once for the whole app. Every board shares these, so putting more boards
+ * in the scene doesn't load anything more.
+ */
+
+import android.content.Context;
+import android.view.Gravity;
+import android.widget.Toast;
+
+import com.google.ar.sceneform.rendering.ModelRenderable;
+
+public class BlockRenderables {
+
+    private ModelRenderable blockRenderable;
+    private ModelRenderable blockLodRenderable;     // low detail block used when the board is far away
+    private ModelRenderable wireFrameRenderable;
+
+    /**
+     * BlockRenderables: Starts loading all the models
+     * @param context context from main activity
+     */
+    public BlockRenderables(Context context) {
+        // Load our wireframe model  - This code was adapted from Google's ARCore sample library in accordance with the Apache v.2.0 license
+        ModelRenderable.builder()
+            .setSource(context, R.raw.wireframe)
+            .build()
+            .thenAccept(renderable -> wireFrameRenderable = renderable)
+            .exceptionally(
+                throwable -> {
+                    Toast toast =
+                        Toast.makeText(context, "Unable to load frame renderable", Toast.LENGTH_LONG);
+                    toast.setGravity(Gravity.CENTER, 0, 0);
+                    toast.show();
+                    return null;
+                });
+
+        // Load our block model  - This code was adapted from Google's ARCore sample library in accordance with the Apache v.2.0 license
+        ModelRenderable.builder()
+            .setSource(context, R.raw.block)
+            .build()
+            .thenAccept(renderable -> blockRenderable = renderable)
+            .exceptionally(
+                throwable -> {
+                    Toast toast =
+                        Toast.makeText(context, "Unable to load block renderable", Toast.LENGTH_LONG);
+                    toast.setGravity(Gravity.CENTER, 0, 0);
+                    toast.show();
+                    return null;
+                });
+
+        // Load the low detail block. It's generated from block.obj at build time, see app/build.gradle
+        ModelRenderable.builder()
+            .setSource(context, R.raw.block_lod1)
+            .build()
+            .thenAccept(renderable -> blockLodRenderable = renderable)
+            .exceptionally(
+                throwable -> {
+                    Toast toast =
+                        Toast.makeText(context, "Unable to load low detail block renderable", Toast.LENGTH_LONG);
+                    toast.setGravity(Gravity.CENTER, 0, 0);
+                    toast.show();
+                    return null;
+                });
+    }
+
+    public ModelRenderable getWireFrame() {
+        return wireFrameRenderable;
+    }
+
+    public ModelRenderable getBlock() {
+        return blockRenderable;
+    }
+
+    /**
+     * getBlockLowDetail: the low detail block
+     * @return the low detail block, or the full detail one if the low detail one hasn't loaded
+     */
+    public ModelRenderable getBlockLowDetail() {
+        return blockLodRenderable != null ? blockLodRenderable : blockRenderable;
+    }
+}
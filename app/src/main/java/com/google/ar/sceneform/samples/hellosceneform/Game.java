@@ -3,83 +3,78 @@ package com.google.ar.sceneform.samples.hellosceneform;
 /*
  * GAME
  * This class handles the functionality and rendering of the actual game.
- * At the first tap after opening the app, a single game is created.
+ * Each tap on a new plane creates a board, up to MainActivity.MAX_BOARDS of them. They all share
+ * one set of models (BlockRenderables) and are ticked together by one GameScheduler.
+ * The rules themselves live in GameEngine, this class shows the engine's board in AR.
+ * Nothing here talks to the UI in the middle of a tick. Scores, clears and game overs are saved
+ * up and handed to a GameEventListener once the frame is done, see GameScheduler.
  */
 
 import android.content.Context;
-import android.widget.Toast;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.TextView;
 
 import com.google.ar.core.Anchor;
 import com.google.ar.sceneform.AnchorNode;
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.Scene;
 import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.rendering.ModelRenderable;
 import com.google.ar.sceneform.ux.ArFragment;
 import com.google.ar.sceneform.ux.TransformableNode;
-import com.google.ar.sceneform.FrameTime;
-import android.view.Gravity;
 
 import java.util.Random;
 
 public class Game{
 
     // Constants
-    private static final int GAME_WIDTH = 4;
-    private static final int GAME_HEIGHT = 6;
-    private static final int RENDERABLE_HEIGHT = 8;    // this height is the height of the frame plus 2 blocks. this lets us drop the next falling block from above the frame
-    private static final int GAME_DEPTH = 4;
+    private static final int GAME_WIDTH = GameEngine.DEFAULT_WIDTH;
+    private static final int GAME_HEIGHT = GameEngine.DEFAULT_HEIGHT;
+    private static final int RENDERABLE_HEIGHT = GAME_HEIGHT + GameEngine.SPAWN_ROOM;    // this height is the height of the frame plus 2 blocks. this lets us drop the next falling block from above the frame
+    private static final int GAME_DEPTH = GameEngine.DEFAULT_DEPTH;
+    private static final float LOD_DISTANCE = 2.0f;     // metres between the camera and the board before we switch to the low detail blocks
+    private static final float LOD_HYSTERESIS = 0.25f;  // stops the blocks flickering between models when the camera sits right on LOD_DISTANCE
 
     // Sceneform bits and bobs
     private AnchorNode gameAnchor;
-    private ModelRenderable blockRenderable;
-    private ModelRenderable wireFrameRenderable;
+    private BlockRenderables renderables;   // shared by every board, so each model is only loaded once
+    private GameScheduler scheduler;        // shared by every board, ticks them all together
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());    // for news from other threads
     private Context context;
+    private Scene scene;
+    private boolean useLowDetail = false;
 
     // Game logic variables and stuff
-    private boolean isStarted = false;
-    private TransformableNode[][][] blockNodeArray = new TransformableNode[GAME_WIDTH][RENDERABLE_HEIGHT][GAME_DEPTH];  // We fill up this array with cubes and set them to visible/invisible rather than moving them around
-    private boolean[][][] blockArray = new boolean[GAME_WIDTH][RENDERABLE_HEIGHT][GAME_DEPTH];     // This array of booleans is the one we do our logic on. We pass it to setVisibleCubes to render it. 
-    private boolean[][][] fallingBlockArray = new boolean[GAME_WIDTH][RENDERABLE_HEIGHT][GAME_DEPTH];   // This array works like the one above but only holds the currently falling block. We can compare it to the above array to check collisions
-    private Random rand;
-    private int score;
-    private float deltaTimeCount; // Used to track how many seconds have passed since the last tick
+    private GameEngine engine;      // The board and the rules. We just draw what's in here
+    private Random seeds = new Random();    // Each game gets its own seed, so it can be replayed
+    private ReplayRecorder recorder = new ReplayRecorder();
+    private long gameSeed;          // The seed this game started from, 0 when it was loaded from a save
+    private Leaderboard leaderboard;    // Where finished games go, or null
+    private boolean isRanked = false;   // This game can still go on the leaderboard. Only once, and not after an undo
+    private Telemetry telemetry;    // Where we note how the game is played, or null
+    private int boardId;            // Which board this is in the telemetry
+    private int movesThisBlock = 0;
+    private Node[][][] blockNodeArray = new Node[GAME_WIDTH][RENDERABLE_HEIGHT][GAME_DEPTH];  // We fill up this array with cubes and set them to visible/invisible rather than moving them around. Each one is only created the first time a block lands there
+    private long[] renderedLayers = new long[RENDERABLE_HEIGHT];    // What's on screen right now, a bit per cell like the engine, so setVisibleBlocks only has to touch the cells that changed
+    private SpectatorStream spectators;     // Other screens watching this board, or null
+    private UndoHistory history;    // The last few block placements, only kept in practice mode
+    private TextView nextPreview;   // The HUD showing which blocks are coming, or null when another board has the buttons
+    private boolean isPreviewStale = false;     // a new block came up and nextPreview hasn't been redrawn yet
+    private GameEventListener listener;     // Who hears about scores and game overs, or null
+    private final GameEvents pendingEvents = new GameEvents();  // What's happened since the listener last heard, reused every time
 
     /**
-     * Game: Instantiates a game and loads 3D assets
+     * Game: Instantiates a game
      * @param theContext context from main activity
+     * @param theRenderables the models, loaded once and shared between boards
+     * @param theScheduler ticks this board along with every other board
      */
-    public Game(Context theContext) {
+    public Game(Context theContext, BlockRenderables theRenderables, GameScheduler theScheduler) {
         context = theContext;
-        rand = new Random();
-        deltaTimeCount = 0.0f;
-
-        // Load our wireframe model  - This code was adapted from Google's ARCore sample library in accordance with the Apache v.2.0 license
-        ModelRenderable.builder()
-            .setSource(context, R.raw.wireframe)
-            .build()
-            .thenAccept(renderable -> wireFrameRenderable = renderable)
-            .exceptionally(
-                throwable -> {
-                    Toast toast =
-                        Toast.makeText(context, "Unable to load frame renderable", Toast.LENGTH_LONG);
-                    toast.setGravity(Gravity.CENTER, 0, 0);
-                    toast.show();
-                    return null;
-                });
-
-        // Load our block model  - This code was adapted from Google's ARCore sample library in accordance with the Apache v.2.0 license
-        ModelRenderable.builder()
-            .setSource(context, R.raw.block)
-            .build()
-            .thenAccept(renderable -> blockRenderable = renderable)
-            .exceptionally(
-                throwable -> {
-                    Toast toast =
-                        Toast.makeText(context, "Unable to load block renderable", Toast.LENGTH_LONG);
-                    toast.setGravity(Gravity.CENTER, 0, 0);
-                    toast.show();
-                    return null;
-                });
-
+        renderables = theRenderables;
+        scheduler = theScheduler;
+        engine = new GameEngine(seeds.nextLong());
     }
 
     /**
@@ -88,55 +83,39 @@ public class Game{
      * @param arFragment AR fragment from main activity
      */
     public void createGame(Anchor anchor, ArFragment arFragment){
+        createGame(anchor, arFragment, null);
+    }
 
-        Toast.makeText(context, "New Game", Toast.LENGTH_SHORT).show();
+    /**
+     * createGame: Display the wireframe mesh at the area tapped and carry on a saved game, or begin a new one
+     * @param anchor the point tapped. Where the game will occur in the world
+     * @param arFragment AR fragment from main activity
+     * @param state bytes from saveState, or null for a new game. A new game is started if they can't be carried on
+     * @return true if the saved game was carried on
+     */
+    public boolean createGame(Anchor anchor, ArFragment arFragment, byte[] state){
 
-        // Frame listener to control the blocks falling
-        arFragment.getArSceneView().getScene().addOnUpdateListener(this::onFrameUpdate);
+        // The scheduler runs the blocks falling, see GameScheduler
+        scene = arFragment.getArSceneView().getScene();
+        scheduler.add(this, scene);
 
         // Create the test cube and add to the ancor
         gameAnchor = new AnchorNode(anchor);
         gameAnchor.setParent(arFragment.getArSceneView().getScene());
         TransformableNode frameNode = new TransformableNode(arFragment.getTransformationSystem());
         frameNode.setParent(gameAnchor);
-        frameNode.setRenderable(wireFrameRenderable);
+        frameNode.setRenderable(renderables.getWireFrame());
         frameNode.getScaleController().setSensitivity(0);   // prevent transformations of the frame
         frameNode.getRotationController().setRotationRateDegrees(0);
 
+        // The block nodes aren't created here. setVisibleBlocks makes each one the first time a block shows up in its spot
 
-        // Place a block at every point in the array. The renderables are kept null, because we change these later
-        for (int x=0;x<GAME_WIDTH;x++){
-            for (int y=0;y<RENDERABLE_HEIGHT;y++){
-                for (int z=0;z<GAME_DEPTH;z++){
-                    blockNodeArray[x][y][z] = new TransformableNode(arFragment.getTransformationSystem());
-                    blockNodeArray[x][y][z].setParent(gameAnchor);
-                    Vector3 localPos = blockNodeArray[x][y][z].getLocalPosition();
-
-                    // Move each block so that it's in it's spot
-                    localPos.x -= 0.375;
-                    localPos.x += x*0.25;
-                    localPos.z -= 0.375;
-                    localPos.z += z*0.25;
-                    localPos.y += y*0.25;
-                    blockNodeArray[x][y][z].setLocalPosition(localPos);
-
-                    // Make each block invisible (and then we can make them visible when we need to)
-                    blockNodeArray[x][y][z].setRenderable(null);
-                    /*if (rand.nextBoolean()) {
-                        blockNodeArray[x][y][z].setRenderable(null);    // We can make blocks invisible by setting their renderable to null.
-                    }else{
-                        blockNodeArray[x][y][z].setRenderable(blockRenderable);
-                    }*/
-                }
-            }
+        // Only start a new game if there's nothing to carry on, so the telemetry doesn't get a game nobody played
+        if (state != null && restoreState(state)){
+            return true;
         }
-
-        isStarted = true;   // start the game
-        deltaTimeCount = 0.0f;
-        score = 0;
-
-        getNextBlock(); // get the first block
-
+        startNewGame();
+        return false;
     }
 
     /**
@@ -144,106 +123,60 @@ public class Game{
      */
     public void gameTick(){
 
-        // First let's see what will happen if we move the falling blocks down one, check to see if there are any collisions
-        // If there are no collisions, we are good to go! Move the falling blocks down one.
-        // If there is a collision, don't drop the falling blocks but add them to the landed blocks array and go from there
-
-        if (isCollided(blockArray, dropFallingBlocks(fallingBlockArray)) || blocksAtBottom(fallingBlockArray)){
-            // There is a collision if we let the blocks fall one more block! so let's add them to the landed blocks array
-            blockArray = combineArrays(blockArray, fallingBlockArray);
-            // Check if there are any full levels and tetris them
-            blockArray = tetrisRows(blockArray);
-            // Check if the player has stacked too high and lost like a loser
-            if (checkForLoss(blockArray)){
-                blockArray = new boolean[GAME_WIDTH][RENDERABLE_HEIGHT][GAME_DEPTH];
-                fallingBlockArray = new boolean[GAME_WIDTH][RENDERABLE_HEIGHT][GAME_DEPTH];
-                setVisibleBlocks(blockArray);
-                isStarted = false;          // player has lost!
-                Toast.makeText(context, "Game over, final score: "+score, Toast.LENGTH_LONG).show();
+        // The engine drops the falling block, or lands it and tetrises any full levels. See GameEngine.tick
+        boolean wasStarted = engine.isStarted();
+        engine.tick();
+        if (wasStarted){
+            recorder.tick(engine);
+            if (telemetry != null && engine.hasJustLanded()){
+                recordLanding();
             }
-            // Get the next block if we haven't lost
-            if (isStarted){
-                getNextBlock();
+        }
+
+        if (engine.hasJustLanded() && engine.isStarted()){     // a new block just came up
+            if (history != null){
+                history.record(engine);
             }
-        }else{
-            fallingBlockArray = dropFallingBlocks(fallingBlockArray);   // Safe from collisions, so move our blocks down, render, and wait for next tick.
+            previewChanged();
+        }
+
+        if (engine.getLastClearedLayers() > 0){
+            pendingEvents.layersCleared += engine.getLastClearedLayers();
+            scoreChanged();
+        }
+        if (wasStarted && !engine.isStarted()){     // the player has stacked too high and lost like a loser
+            Replay replay = recorder.finish(engine);   // null if the game was carried on from a save
+            scheduler.update();         // nothing to do every frame until they restart
+            pendingEvents.gameOver = true;
+            if (leaderboard != null && isRanked){
+                isRanked = false;
+                submitScore(replay);
+            }
+            scoreChanged();
         }
 
         // Render the new blocks
-        setVisibleBlocks(combineArrays(blockArray, fallingBlockArray));
+        setVisibleBlocks();
 
         // Now we can wait for the next tick.
     }
 
     /**
-     * getNextBlock: Places the next random block into the falling block array
+     * submitScore: Hands the finished game to the leaderboard. Its writer thread checks the replay and ranks it, so the
+     * frame never waits on the leaderboard, and the rank comes to the listener in a later delivery than the game over
+     * @param replay how the game was played, or null
      */
-    public void getNextBlock(){
-        // clear the array
-        for (int x=0;x<GAME_WIDTH;x++){
-            for (int y=0;y<RENDERABLE_HEIGHT;y++){
-                for (int z=0;z<GAME_DEPTH;z++){
-                    fallingBlockArray[x][y][z] = false;
+    private void submitScore(Replay replay){
+        int mode = isPracticeMode() ? Leaderboard.MODE_PRACTICE : Leaderboard.MODE_NORMAL;
+        leaderboard.submitLater(new Leaderboard.Entry(engine.getScore(), System.currentTimeMillis(), gameSeed,
+            GAME_WIDTH, GAME_HEIGHT, GAME_DEPTH, mode), replay,
+            (entry, rank, bestScore) -> mainHandler.post(() -> {
+                if (rank > 0){
+                    pendingEvents.leaderboardRank = rank;
+                    pendingEvents.bestScore = bestScore;
+                    scheduler.deliverEventsLater(this);
                 }
-            }
-        }
-        int nextBlockSelection = rand.nextInt(11);
-        int nextBlockX = rand.nextInt(4);
-        int nextBlockZ = rand.nextInt(4);
-
-        // Program in the next block
-        if (nextBlockSelection == 0){
-            fallingBlockArray[nextBlockX][6][nextBlockZ] = true;  // Single 1x1 block
-        }
-
-        if (nextBlockSelection == 1 || nextBlockSelection == 2){    // These blocks can come up twice as likely cos they're the nicest
-            int nextBlockXLimited = rand.nextInt(3);
-            fallingBlockArray[nextBlockXLimited][6][nextBlockZ] = true;  // 2x1 horizontal on x
-            fallingBlockArray[nextBlockXLimited+1][6][nextBlockZ] = true;
-        }
-
-        if (nextBlockSelection == 3 || nextBlockSelection == 4){
-            int nextBlockZLimited = rand.nextInt(3);
-            fallingBlockArray[nextBlockX][6][nextBlockZLimited] = true;  // 2x1 horizontal on y
-            fallingBlockArray[nextBlockX][6][nextBlockZLimited+1] = true;
-        }
-
-        if (nextBlockSelection == 5 || nextBlockSelection == 6){
-            fallingBlockArray[nextBlockX][6][nextBlockZ] = true;  // 2x1 vertical
-            fallingBlockArray[nextBlockX][7][nextBlockZ] = true;
-        }
-
-        if (nextBlockSelection == 7){
-            int nextBlockZLimited = rand.nextInt(3);
-            int nextBlockXLimited = rand.nextInt(3);
-            fallingBlockArray[nextBlockXLimited][6][nextBlockZLimited] = true;    // X X  block
-            fallingBlockArray[nextBlockXLimited][6][nextBlockZLimited+1] = true;  // X
-            fallingBlockArray[nextBlockXLimited+1][6][nextBlockZLimited] = true;
-        }
-
-        if (nextBlockSelection == 8){
-            int nextBlockZLimited = rand.nextInt(3);
-            int nextBlockXLimited = rand.nextInt(3);
-            fallingBlockArray[nextBlockXLimited][6][nextBlockZLimited] = true;    // X X  block
-            fallingBlockArray[nextBlockXLimited][6][nextBlockZLimited+1] = true;  // X
-            fallingBlockArray[nextBlockXLimited+1][6][nextBlockZLimited+1] = true;
-        }
-
-        if (nextBlockSelection == 9){
-            int nextBlockZLimited = rand.nextInt(3);
-            int nextBlockXLimited = rand.nextInt(3);
-            fallingBlockArray[nextBlockXLimited+1][6][nextBlockZLimited] = true;    // X X  block
-            fallingBlockArray[nextBlockXLimited][6][nextBlockZLimited+1] = true;    // X
-            fallingBlockArray[nextBlockXLimited+1][6][nextBlockZLimited+1] = true;
-        }
-
-        if (nextBlockSelection == 10){
-            int nextBlockZLimited = rand.nextInt(3);
-            int nextBlockXLimited = rand.nextInt(3);
-            fallingBlockArray[nextBlockXLimited+1][6][nextBlockZLimited] = true;    // X X  block
-            fallingBlockArray[nextBlockXLimited][6][nextBlockZLimited] = true;      // X
-            fallingBlockArray[nextBlockXLimited+1][6][nextBlockZLimited+1] = true;
-        }
+            }));
     }
 
     /**
@@ -284,119 +217,109 @@ public class Game{
     }
 
     /**
-     * dropFallingBlocks: moves all the true blocks in the falling blocks array down one.
-     * @param b the falling blocks array
-     * @return the same array where every block is shifted down one
+     * checkForLoss: Checks all the blocks at the top of the game. If there is a block there, the player has lost the game (stacked too high)
+     * @param a array to check
+     * @return true if player has lost, otherwise false
      */
-    public boolean[][][] dropFallingBlocks(boolean[][][] b){
-        boolean[][][] a = copyArray(b);
+    public static boolean checkForLoss(boolean[][][] a){
         for (int x=0;x<GAME_WIDTH;x++){
-            for (int y=0;y<RENDERABLE_HEIGHT-1;y++){
+            for (int y=GAME_HEIGHT-1;y<RENDERABLE_HEIGHT;y++){
                 for (int z=0;z<GAME_DEPTH;z++){
-                    a[x][y][z] = a[x][y+1][z];  // this has the effect of moving all the blocks down one (i hope)
+                    if (a[x][y][z]){
+                        return true;
+                    }
                 }
             }
         }
-        for (int x=0;x<GAME_WIDTH;x++){
-            for (int z=0;z<GAME_DEPTH;z++){
-                a[x][7][z] = false;         // clear the top layer manually cos it gets missed by that fancy algorithm
-            }
-        }
-        return a;
+
+        return false;
     }
 
 
     /**
-     * combineArrays: returns an array of the two passed arrays where a true in either results in a true in the result.
-     * @param c first array
-     * @param d second array
-     * @return both arrays after passing through an OR function
+     * setVisibleBlocks: Makes the engine's landed and falling blocks visible in the world.
+     * Only the blocks that are different to what's already on screen get touched.
      */
-    public boolean[][][] combineArrays(boolean[][][] c, boolean[][][] d){
-        boolean[][][] a = copyArray(c);
-        boolean[][][] b = copyArray(d);
-        for (int x=0;x<GAME_WIDTH;x++){
-            for (int y=0;y<RENDERABLE_HEIGHT;y++){
-                for (int z=0;z<GAME_DEPTH;z++){
-                    a[x][y][z] = a[x][y][z] || b[x][y][z];  // I'm proud of this
+    public void setVisibleBlocks(){
+        for (int y=0;y<RENDERABLE_HEIGHT;y++){
+            long shown = engine.getBoardLayer(y) | engine.getFallingLayer(y);
+            long changed = shown ^ renderedLayers[y];
+            renderedLayers[y] = shown;
+            while (changed != 0){
+                int bit = Long.numberOfTrailingZeros(changed);
+                changed &= changed - 1;
+                int x = bit / GAME_DEPTH;
+                int z = bit % GAME_DEPTH;
+                if ((shown & (1L << bit)) != 0){
+                    getBlockNode(x, y, z).setRenderable(currentBlockRenderable());
+                }else{
+                    blockNodeArray[x][y][z].setRenderable(null);    // it was visible, so it exists already
                 }
             }
         }
-        return a;
+        if (spectators != null){
+            spectators.publish();     // everything that changes the board comes through here, so this is the one place to tell them
+        }
     }
 
-
     /**
-     * tetrisRows: Checks every level of the array. If there is a row that's full, remove it and move all the blocks above it down.
-     * @param a the input arrray
-     * @return the array with operations applied
+     * setSpectatorStream: Mirrors this board to other screens. See SpectatorStream
+     * @param stream a stream made with getEngine(), or null to stop
      */
-    public boolean[][][] tetrisRows(boolean[][][] a){
-        boolean hasTetrised = false;
-        for (int y=0;y<GAME_HEIGHT;y++){
-            boolean isBlankSquare = false;
-            for (int x=0;x<GAME_WIDTH;x++){
-                for (int z=0;z<GAME_DEPTH;z++){
-                    if (!a[x][y][z]){
-                        isBlankSquare = true;
-                    }
-                }
-            }
-            if (!isBlankSquare){    // Tetris'ed a row! Good job.
-                for (int x=0;x<GAME_WIDTH;x++){
-                    for (int yy=y;yy<RENDERABLE_HEIGHT-1;yy++){
-                        for (int z=0;z<GAME_DEPTH;z++){
-                            a[x][yy][z] = a[x][yy+1][z];  // this has the effect of moving all the blocks down one (i hope)
-                        }
-                    }
-                }
-                for (int x=0;x<GAME_WIDTH;x++){
-                    for (int z=0;z<GAME_DEPTH;z++){
-                        a[x][7][z] = false;         // clear the top layer manually cos it gets missed by that fancy algorithm
-                    }
-                }
-                hasTetrised = true;
-                score++;
-                y--;        // Since the row above fell into the row we're looking at now we need to do this row again
-            }
+    public void setSpectatorStream(SpectatorStream stream){
+        spectators = stream;
+        if (spectators != null){
+            spectators.publish();
         }
-        if (hasTetrised){Toast.makeText(context, "Score: "+score, Toast.LENGTH_SHORT).show();}
-        return a;
     }
 
     /**
-     * checkForLoss: Checks all the blocks at the top of the game. If there is a block there, the player has lost the game (stacked too high)
-     * @param a array to check
-     * @return true if player has lost, otherwise false
+     * getBlockNode: Gets the node for a spot on the board, creating it the first time it's needed
+     * @return the node sitting in that spot
      */
-    public static boolean checkForLoss(boolean[][][] a){
-        for (int x=0;x<GAME_WIDTH;x++){
-            for (int y=GAME_HEIGHT-1;y<RENDERABLE_HEIGHT;y++){
-                for (int z=0;z<GAME_DEPTH;z++){
-                    if (a[x][y][z]){
-                        return true;
-                    }
-                }
-            }
+    private Node getBlockNode(int x, int y, int z){
+        if (blockNodeArray[x][y][z] == null){
+            Node node = new Node();
+            node.setParent(gameAnchor);
+            Vector3 localPos = node.getLocalPosition();
+
+            // Move each block so that it's in it's spot
+            localPos.x -= 0.375;
+            localPos.x += x*0.25;
+            localPos.z -= 0.375;
+            localPos.z += z*0.25;
+            localPos.y += y*0.25;
+            node.setLocalPosition(localPos);
+            blockNodeArray[x][y][z] = node;
         }
-
-        return false;
+        return blockNodeArray[x][y][z];
     }
 
+    /**
+     * currentBlockRenderable: the block model to show for the current camera distance
+     * @return the low detail block when the board is far away and it has loaded, otherwise the full detail one
+     */
+    private ModelRenderable currentBlockRenderable(){
+        return useLowDetail ? renderables.getBlockLowDetail() : renderables.getBlock();
+    }
 
     /**
-     * setVisibleBlocks: Takes a 3D bool array and makes the true blocks visible in the world.
-     * @param boolArray The array of booleans to set to visible
+     * updateLevelOfDetail: Checks how far the camera is from the board and swaps the block models over when it crosses LOD_DISTANCE.
+     * The scheduler calls this once a tick rather than every frame, nobody walks across a room in a second
      */
-    public void setVisibleBlocks(boolean[][][] boolArray){
-        for (int x=0;x<GAME_WIDTH;x++){
+    public void updateLevelOfDetail(){
+        if (gameAnchor == null){
+            return;
+        }
+        float distance = Vector3.subtract(scene.getCamera().getWorldPosition(), gameAnchor.getWorldPosition()).length();
+        boolean lowDetail = useLowDetail ? distance > LOD_DISTANCE - LOD_HYSTERESIS : distance > LOD_DISTANCE + LOD_HYSTERESIS;
+        if (lowDetail != useLowDetail){
+            useLowDetail = lowDetail;
+            ModelRenderable block = currentBlockRenderable();
             for (int y=0;y<RENDERABLE_HEIGHT;y++){
-                for (int z=0;z<GAME_DEPTH;z++){
-                    if (boolArray[x][y][z]){
-                        blockNodeArray[x][y][z].setRenderable(blockRenderable);
-                    }else{
-                        blockNodeArray[x][y][z].setRenderable(null);
-                    }
+                for (long shown = renderedLayers[y]; shown != 0; shown &= shown - 1){
+                    int bit = Long.numberOfTrailingZeros(shown);
+                    blockNodeArray[bit / GAME_DEPTH][y][bit % GAME_DEPTH].setRenderable(block);
                 }
             }
         }
@@ -414,200 +337,286 @@ public class Game{
         return b;
     }
 
+    /**
+     * saveState: Packs the whole game into a snapshot so it can be carried on later with restoreState
+     * @return under a hundred bytes holding the board, falling block, score, random state and tick timer
+     */
+    public byte[] saveState(){
+        return GameSnapshot.toBytes(engine, scheduler.getTickAccumulator());
+    }
+
+    /**
+     * restoreState: Puts the game back exactly how it was when saveState was called. The game must have been created first,
+     * because the blocks are shown straight away
+     * @param state bytes from saveState
+     * @return true if the game was restored, false if the bytes weren't a game we can carry on
+     */
+    public boolean restoreState(byte[] state){
+        GameSnapshot snapshot = GameSnapshot.fromBytes(state, engine);
+        if (snapshot == null || !snapshot.isStarted){
+            return false;
+        }
+        snapshot.applyTo(engine);
+        recorder.cancel();      // we don't have the start of this game, so it can't be replayed
+        gameSeed = 0;
+        isRanked = true;        // it's still the same game, so it still counts
+        movesThisBlock = 0;     // moves before saving weren't kept
+        if (telemetry != null){
+            telemetry.record(Telemetry.RESUME, boardId, engine.getTickCount(), 0);
+        }
+        if (history != null){
+            history.clear();
+            history.record(engine);
+        }
+        scheduler.restoreTickAccumulator(this, snapshot.deltaTimeCount);
+        setVisibleBlocks();
+        pendingEvents.started = true;
+        previewChanged();
+        scoreChanged();
+        scheduler.update();
+        return true;
+    }
+
     /**
      * isStarted: lets us know when the game has started (the player has tapped in the world and a frame has been summoned)
      * @return true if the game is being played, false if otherwise.
      */
     public boolean isStarted(){
-        return isStarted;
+        return engine.isStarted();
     }
 
     /**
-     * userPressedLeft: moves a falling block left when there are no collisions
+     * getEngine: the rules and board behind this game
+     * @return the engine
      */
-    public void userPressedLeft() {
-        boolean[][][] a = copyArray(fallingBlockArray);
-        boolean blockAtEdge = false;
+    public GameEngine getEngine(){
+        return engine;
+    }
 
-        for (int y=0;y<RENDERABLE_HEIGHT;y++){
-            for (int z=0;z<GAME_DEPTH;z++){
-                if (a[0][y][z]){
-                    blockAtEdge = true;
-                }
-            }
-        }
+    /**
+     * setLeaderboard: Sends every game that finishes on this board to a leaderboard
+     * @param theLeaderboard the leaderboard, or null
+     */
+    public void setLeaderboard(Leaderboard theLeaderboard){
+        leaderboard = theLeaderboard;
+    }
 
-        if (!blockAtEdge) {
-            for (int x=0;x<GAME_WIDTH-1;x++){
-                for (int y=0;y<RENDERABLE_HEIGHT;y++){
-                    for (int z=0;z<GAME_DEPTH;z++){
-                        a[x][y][z] = a[x+1][y][z];
-                    }
-                }
-            }
-            for (int y=0;y<RENDERABLE_HEIGHT;y++){
-                for (int z=0;z<GAME_DEPTH;z++){
-                    a[GAME_WIDTH-1][y][z] = false;
-                }
-            }
+    /**
+     * setTelemetry: Notes how the game on this board is played, see Telemetry
+     * @param theTelemetry where to record, or null to stop
+     * @param theBoardId which board this is, so boards can be told apart
+     */
+    public void setTelemetry(Telemetry theTelemetry, int theBoardId){
+        telemetry = theTelemetry;
+        boardId = theBoardId;
+    }
 
-            if (!isCollided(blockArray, a)) {
-                fallingBlockArray = a;
-                setVisibleBlocks(combineArrays(blockArray, fallingBlockArray));
-            }
+    /**
+     * recordLanding: Tells the telemetry a block landed, what it cleared, and what came up next or that the game's over
+     */
+    private void recordLanding(){
+        int tick = engine.getTickCount();
+        telemetry.record(Telemetry.LOCK, boardId, tick, movesThisBlock);
+        movesThisBlock = 0;
+        if (engine.getLastClearedLayers() > 0){
+            telemetry.record(Telemetry.CLEAR, boardId, tick, engine.getLastClearedLayers());
+        }
+        if (engine.isStarted()){
+            telemetry.record(Telemetry.SPAWN, boardId, tick, Telemetry.packPiece(engine.getLastSpawned()));
+        }else{
+            telemetry.record(Telemetry.GAME_OVER, boardId, tick, engine.getScore());
         }
     }
 
-
+    private void recordPress(int command, boolean moved){
+        if (moved){
+            movesThisBlock++;
+        }
+        if (telemetry != null){
+            telemetry.record(Telemetry.PRESS, boardId, engine.getTickCount(), command | (moved ? Telemetry.MOVED : 0));
+        }
+    }
 
     /**
-     * userPressedRight: moves a falling block right when there are no collisions
+     * setGameEventListener: Tells someone about scores, cleared layers and game overs on this board. They hear about them
+     * once the frame they happened in is done, see GameEventListener
+     * @param theListener the listener, or null
      */
-    public void userPressedRight() {
-        boolean[][][] a = copyArray(fallingBlockArray);
-        boolean blockAtEdge = false;
+    public void setGameEventListener(GameEventListener theListener){
+        listener = theListener;
+    }
 
-        for (int y=0;y<RENDERABLE_HEIGHT;y++){
-            for (int z=0;z<GAME_DEPTH;z++){
-                if (a[GAME_WIDTH-1][y][z]){
-                    blockAtEdge = true;
-                }
-            }
-        }
+    private void scoreChanged(){
+        pendingEvents.scoreChanged = true;
+        pendingEvents.score = engine.getScore();
+        scheduler.deliverEventsLater(this);
+    }
 
-        if (!blockAtEdge) {
-            for (int x=GAME_WIDTH-1;x>0;x--){
-                for (int y=0;y<RENDERABLE_HEIGHT;y++){
-                    for (int z=0;z<GAME_DEPTH;z++){
-                        a[x][y][z] = a[x-1][y][z];
-                    }
-                }
-            }
-            for (int y=0;y<RENDERABLE_HEIGHT;y++){
-                for (int z=0;z<GAME_DEPTH;z++){
-                    a[0][y][z] = false;
-                }
-            }
+    private void previewChanged(){
+        isPreviewStale = true;
+        scheduler.deliverEventsLater(this);
+    }
 
-            if (!isCollided(blockArray, a)) {
-                fallingBlockArray = a;
-                setVisibleBlocks(combineArrays(blockArray, fallingBlockArray));
-            }
+    /**
+     * deliverEvents: Redraws the preview if a block came up and tells the listener everything that's happened since it
+     * last heard. Only GameScheduler calls this, after the frame's ticks are done
+     */
+    void deliverEvents(){
+        if (isPreviewStale){
+            isPreviewStale = false;
+            updateNextPreview();
         }
+        if (listener != null && !pendingEvents.isEmpty()){
+            listener.onGameEvents(this, pendingEvents);
+        }
+        pendingEvents.clear();
     }
 
     /**
-     * userPressedForward: moves a falling block forward when there are no collisions
+     * setNextPreview: Shows the blocks coming up on this board in a HUD view
+     * @param view the view to write them in, or null when another board takes the view over
      */
-    public void userPressedForward() {
-        boolean[][][] a = copyArray(fallingBlockArray);
-        boolean blockAtEdge = false;
+    public void setNextPreview(TextView view){
+        nextPreview = view;
+        updateNextPreview();
+    }
 
-        for (int x=0;x<GAME_WIDTH;x++){
-            for (int y=0;y<RENDERABLE_HEIGHT;y++){
-                if (a[x][y][0]){
-                    blockAtEdge = true;
-                }
-            }
+    /**
+     * updateNextPreview: Writes the upcoming blocks into the HUD, with the next one drawn from above where it will come
+     * up. Only called when a new block comes up, not every tick
+     */
+    private void updateNextPreview(){
+        if (nextPreview == null){
+            return;
         }
-
-        if (!blockAtEdge) {
-            for (int x=0;x<GAME_WIDTH;x++){
-                for (int y=0;y<RENDERABLE_HEIGHT;y++){
-                    for (int z=0;z<GAME_DEPTH-1;z++){
-                        a[x][y][z] = a[x][y][z+1];
-                    }
-                }
-            }
+        StringBuilder text = new StringBuilder("Next:");
+        for (int i=0;i<engine.getPreviewSize();i++){
+            text.append(' ').append(PieceGenerator.nameOf(engine.getPreview(i)));
+        }
+        int next = engine.getPreview(0);
+        long footprint = engine.getPieceGenerator().footprint(next);
+        for (int z=GAME_DEPTH-1;z>=0;z--){     // furthest row first, like looking down at the board from the buttons
+            text.append('\n');
             for (int x=0;x<GAME_WIDTH;x++){
-                for (int y=0;y<RENDERABLE_HEIGHT;y++){
-                    a[x][y][GAME_DEPTH-1] = false;
-                }
-            }
-
-            if (!isCollided(blockArray, a)) {
-                fallingBlockArray = a;
-                setVisibleBlocks(combineArrays(blockArray, fallingBlockArray));
+                boolean covered = (footprint & (1L << (x*GAME_DEPTH + z))) != 0;
+                text.append(covered ? (PieceGenerator.isTall(next) ? '^' : '#') : '.');     // ^ for the tall block, it takes two layers
             }
         }
+        nextPreview.setText(text);
     }
 
     /**
-     * userPressedBackward: moves a falling block backward when there are no collisions
+     * setPracticeMode: Turns on undo for this board. Call it before createGame
+     * @param practice true to remember the last UndoHistory.DEFAULT_CAPACITY block placements
      */
-    public void userPressedBackward() {
-        boolean[][][] a = copyArray(fallingBlockArray);
-        boolean blockAtEdge = false;
+    public void setPracticeMode(boolean practice){
+        history = practice ? new UndoHistory(engine, UndoHistory.DEFAULT_CAPACITY) : null;
+    }
 
-        for (int x=0;x<GAME_WIDTH;x++){
-            for (int y=0;y<RENDERABLE_HEIGHT;y++){
-                if (a[x][y][GAME_DEPTH-1]){
-                    blockAtEdge = true;
-                }
-            }
+    /**
+     * isPracticeMode: lets us know if undo is turned on
+     * @return true if this board is in practice mode
+     */
+    public boolean isPracticeMode(){
+        return history != null;
+    }
+
+    /**
+     * undo: Takes back the last block that landed, so the player can have another go at placing it. Works after losing too
+     * @return true if a block was taken back
+     */
+    public boolean undo(){
+        if (history == null || !history.undo(engine)){
+            return false;
+        }
+        recorder.cancel();      // an undone game isn't a real score
+        isRanked = false;       // and it doesn't go on the leaderboard, or every loss after an undo would be another entry
+        movesThisBlock = 0;
+        if (telemetry != null){
+            telemetry.record(Telemetry.UNDO, boardId, engine.getTickCount(), 0);
         }
+        setVisibleBlocks();
+        previewChanged();
+        scoreChanged();
+        scheduler.update();     // in case the game was over and the scheduler had stopped
+        return true;
+    }
 
-        if (!blockAtEdge) {
-            for (int x=0;x<GAME_WIDTH;x++){
-                for (int y=0;y<RENDERABLE_HEIGHT;y++){
-                    for (int z=GAME_DEPTH-1;z>0;z--){
-                        a[x][y][z] = a[x][y][z-1];
-                    }
-                }
-            }
-            for (int x=0;x<GAME_WIDTH;x++){
-                for (int y=0;y<RENDERABLE_HEIGHT;y++){
-                    a[x][y][0] = false;
-                }
-            }
+    /**
+     * userPressedLeft: moves a falling block left when there are no collisions
+     */
+    public void userPressedLeft() {
+        recorder.press(PlayerInput.LEFT);
+        boolean moved = engine.moveLeft();
+        recordPress(PlayerInput.LEFT, moved);
+        if (moved) {
+            setVisibleBlocks();
+        }
+    }
 
-            if (!isCollided(blockArray, a)) {
-                fallingBlockArray = a;
-                setVisibleBlocks(combineArrays(blockArray, fallingBlockArray));
-            }
+    /**
+     * userPressedRight: moves a falling block right when there are no collisions
+     */
+    public void userPressedRight() {
+        recorder.press(PlayerInput.RIGHT);
+        boolean moved = engine.moveRight();
+        recordPress(PlayerInput.RIGHT, moved);
+        if (moved) {
+            setVisibleBlocks();
         }
     }
 
     /**
-     * restart: Instantiates a new game
-     * @param arFragment from main activity
+     * userPressedForward: moves a falling block forward when there are no collisions
      */
-    public void restart(ArFragment arFragment) {
-        // Place a block at every point in the array. The renderables are kept null, because we change these later
-        for (int x=0;x<GAME_WIDTH;x++){
-            for (int y=0;y<RENDERABLE_HEIGHT;y++){
-                for (int z=0;z<GAME_DEPTH;z++){
-                    blockNodeArray[x][y][z] = new TransformableNode(arFragment.getTransformationSystem());
-                    blockNodeArray[x][y][z].setParent(gameAnchor);
-                    Vector3 localPos = blockNodeArray[x][y][z].getLocalPosition();
-
-                    // Move each block so that it's in it's spot
-                    localPos.x -= 0.375;
-                    localPos.x += x*0.25;
-                    localPos.z -= 0.375;
-                    localPos.z += z*0.25;
-                    localPos.y += y*0.25;
-                    blockNodeArray[x][y][z].setLocalPosition(localPos);
-
-                    // Make each block invisible (and then we can make them visible when we need to)
-                    blockNodeArray[x][y][z].setRenderable(null);
-                }
-            }
+    public void userPressedForward() {
+        recorder.press(PlayerInput.FORWARD);
+        boolean moved = engine.moveForward();
+        recordPress(PlayerInput.FORWARD, moved);
+        if (moved) {
+            setVisibleBlocks();
         }
+    }
 
-        isStarted = true;   // start the game
-        score = 0;
-        deltaTimeCount = 0.0f;
+    /**
+     * userPressedBackward: moves a falling block backward when there are no collisions
+     */
+    public void userPressedBackward() {
+        recorder.press(PlayerInput.BACKWARD);
+        boolean moved = engine.moveBackward();
+        recordPress(PlayerInput.BACKWARD, moved);
+        if (moved) {
+            setVisibleBlocks();
+        }
+    }
 
-        getNextBlock(); // get the first block
+    /**
+     * restart: Starts a new game on the same board. Block nodes made by the last game are reused, they're all hidden already
+     * because the board is cleared when the player loses
+     */
+    public void restart() {
+        startNewGame();
     }
 
-    private void onFrameUpdate(FrameTime frameTime) {
-        deltaTimeCount += frameTime.getDeltaSeconds();
-        if (deltaTimeCount > 1.0f){
-            deltaTimeCount = 0.0f;
-            gameTick();
+    private void startNewGame() {
+        gameSeed = seeds.nextLong();
+        engine.start(gameSeed);     // start the game and get the first block
+        recorder.begin(engine, gameSeed);
+        isRanked = true;
+        movesThisBlock = 0;
+        if (telemetry != null){
+            telemetry.record(Telemetry.START, boardId, 0, 0);
+            telemetry.record(Telemetry.SPAWN, boardId, 0, Telemetry.packPiece(engine.getLastSpawned()));
+        }
+        if (history != null){
+            history.clear();
+            history.record(engine);
         }
+        setVisibleBlocks();
+        pendingEvents.started = true;
+        previewChanged();
+        scoreChanged();
+        scheduler.update();
     }
 
 }
@@ -0,0 +1,553 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * GAME ENGINE
+ * The rules of the game with nothing Android in them, so they can run headless: in tests, in a
+ * versus match against another device, or anywhere else that needs a deterministic game.
+ * Game wraps one of these and draws it in AR.
+ *
+ * The board is stored one long per layer, with bit (x * depth + z) for the cell at (x, z). That
+ * makes collisions an AND, landing a block an OR, and moving a block a shift, instead of loops
+ * over a boolean[][][]. The rules are the same ones Game always had:
+ *  - every tick the falling block drops one layer, unless that would hit a landed block or go
+ *    through the floor, in which case it lands
+ *  - a full layer anywhere below the top of the frame is removed, everything above drops down,
+ *    and the score goes up by one
+ *  - the game is lost when anything has landed in the top layer of the frame or above it
+ *
+ * Given the same seed and the same calls, two engines always end up in the same state. Which
+ * blocks come up is decided by a PieceGenerator, which knows the next few ahead of time.
+ */
+
+import java.nio.ByteBuffer;
+
+public class GameEngine {
+
+    public static final int DEFAULT_WIDTH = 4;
+    public static final int DEFAULT_HEIGHT = 6;
+    public static final int DEFAULT_DEPTH = 4;
+    public static final int SPAWN_ROOM = 2;    // layers above the frame where new blocks appear
+    public static final int DEFAULT_PREVIEW = 3;    // upcoming blocks the player can see
+
+    private static final long GARBAGE_SEED_SALT = 0x6A09E667F3BCC909L;
+
+    private final int width;
+    private final int height;           // height of the frame, the part the player can fill
+    private final int renderableHeight; // height of the frame plus the spawn room
+    private final int depth;
+    private final long fullLayer;
+    private final long leftEdge;        // every cell with x == 0
+    private final long rightEdge;       // every cell with x == width - 1
+    private final long frontEdge;       // every cell with z == 0
+    private final long backEdge;        // every cell with z == depth - 1
+
+    private final long[] board;         // landed blocks
+    private final long[] falling;       // the block that's falling
+    private final long[] scratch;       // reused for trial moves so a move doesn't allocate
+    private final PieceGenerator pieces;
+    private final SeededRandom garbageRand;
+    private boolean isStarted;
+    private int score;
+    private int tickCount;
+    private int pendingGarbage;         // layers sent by the other player, added when our next block lands
+    private int lastClearedLayers;
+    private boolean lastTickLanded;
+    private int lastSpawned = -1;       // the last block that came up, as it came up. Not saved, it's only for telemetry
+
+    /**
+     * GameEngine: Creates an engine with the normal 4x6x4 frame
+     * @param seed decides which blocks come up
+     */
+    public GameEngine(long seed) {
+        this(DEFAULT_WIDTH, DEFAULT_HEIGHT, DEFAULT_DEPTH, seed);
+    }
+
+    /**
+     * GameEngine: Creates an engine with the classic blocks
+     * @param width cells along x, at least 2
+     * @param height layers in the frame, at least 2. SPAWN_ROOM more layers are added on top for new blocks
+     * @param depth cells along z, at least 2
+     * @param seed decides which blocks come up
+     */
+    public GameEngine(int width, int height, int depth, long seed) {
+        this(width, height, depth, seed, PiecePolicy.CLASSIC, DEFAULT_PREVIEW);
+    }
+
+    /**
+     * GameEngine: Creates an engine
+     * @param width cells along x, at least 2
+     * @param height layers in the frame, at least 2. SPAWN_ROOM more layers are added on top for new blocks
+     * @param depth cells along z, at least 2
+     * @param seed decides which blocks come up
+     * @param policy how likely each block is
+     * @param previewSize how many blocks the player can see coming, at least 1
+     */
+    public GameEngine(int width, int height, int depth, long seed, PiecePolicy policy, int previewSize) {
+        if (width < 2 || depth < 2 || height < 2 || width * depth > 64) {
+            throw new IllegalArgumentException("Unsupported board size " + width + "x" + height + "x" + depth);
+        }
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        renderableHeight = height + SPAWN_ROOM;
+        fullLayer = width * depth == 64 ? -1L : (1L << (width * depth)) - 1;
+        leftEdge = (1L << depth) - 1;
+        rightEdge = leftEdge << ((width - 1) * depth);
+        long front = 0;
+        for (int x = 0; x < width; x++) {
+            front |= 1L << (x * depth);
+        }
+        frontEdge = front;
+        backEdge = front << (depth - 1);
+        board = new long[renderableHeight];
+        falling = new long[renderableHeight];
+        scratch = new long[renderableHeight];
+        pieces = new PieceGenerator(width, depth, seed, policy, previewSize);
+        garbageRand = new SeededRandom(seed ^ GARBAGE_SEED_SALT);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRenderableHeight() {
+        return renderableHeight;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public boolean isStarted() {
+        return isStarted;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getTickCount() {
+        return tickCount;
+    }
+
+    public int getPendingGarbage() {
+        return pendingGarbage;
+    }
+
+    /**
+     * getLastClearedLayers: how many layers the last tick removed
+     * @return layers removed by the most recent call to tick
+     */
+    public int getLastClearedLayers() {
+        return lastClearedLayers;
+    }
+
+    public PiecePolicy getPiecePolicy() {
+        return pieces.getPolicy();
+    }
+
+    public int getPreviewSize() {
+        return pieces.getPreviewSize();
+    }
+
+    /**
+     * getPreview: A block that's coming up, for showing the player
+     * @param ahead 0 for the next block, up to getPreviewSize() - 1
+     * @return the block, see PieceGenerator
+     */
+    public int getPreview(int ahead) {
+        return pieces.peek(ahead);
+    }
+
+    /**
+     * getPieceGenerator: where the blocks come from. Only for reading, taking blocks from it would change the game
+     * @return the generator
+     */
+    public PieceGenerator getPieceGenerator() {
+        return pieces;
+    }
+
+    /**
+     * hasJustLanded: whether the last tick landed the falling block, so a new one came up (or the game was lost)
+     * @return true if the most recent call to tick landed a block
+     */
+    public boolean hasJustLanded() {
+        return lastTickLanded;
+    }
+
+    /**
+     * getLastSpawned: the block that came up most recently, where it came up, before the player moved it
+     * @return the block (see PieceGenerator), or -1 if the game was loaded since and we don't know
+     */
+    public int getLastSpawned() {
+        return lastSpawned;
+    }
+
+    /**
+     * getBoardLayer: the landed blocks in one layer
+     * @param y the layer
+     * @return one bit per cell, bit (x * depth + z)
+     */
+    public long getBoardLayer(int y) {
+        return board[y];
+    }
+
+    /**
+     * getFallingLayer: the falling block's cells in one layer
+     * @param y the layer
+     * @return one bit per cell, bit (x * depth + z)
+     */
+    public long getFallingLayer(int y) {
+        return falling[y];
+    }
+
+    /**
+     * isFilled: lets us know if there's a landed or falling block in a cell
+     * @return true if the cell should be drawn
+     */
+    public boolean isFilled(int x, int y, int z) {
+        long bit = 1L << (x * depth + z);
+        return ((board[y] | falling[y]) & bit) != 0;
+    }
+
+    /**
+     * start: Empties the board and drops the first block. The block sequence carries on from the seed, it doesn't restart
+     */
+    public void start() {
+        for (int y = 0; y < renderableHeight; y++) {
+            board[y] = 0;
+        }
+        isStarted = true;
+        score = 0;
+        tickCount = 0;
+        pendingGarbage = 0;
+        lastClearedLayers = 0;
+        lastTickLanded = false;
+        spawnBlock();
+    }
+
+    /**
+     * start: Empties the board and drops the first block from a new seed, so the game can be played again from just the
+     * seed and the inputs. See Replay
+     * @param seed decides which blocks come up
+     */
+    public void start(long seed) {
+        pieces.reseed(seed);
+        garbageRand.setSeed(seed ^ GARBAGE_SEED_SALT);
+        start();
+    }
+
+    /**
+     * tick: Moves the game on one step. Not every frame, but each time we want the blocks to move one block down.
+     * Does nothing once the game is lost
+     */
+    public void tick() {
+        lastClearedLayers = 0;
+        lastTickLanded = false;
+        if (!isStarted) {
+            return;
+        }
+        tickCount++;
+
+        // First let's see what will happen if we move the falling block down one. If it would hit something, or it's
+        // already on the floor, it lands where it is
+        boolean landed = falling[0] != 0;
+        for (int y = 0; y < renderableHeight - 1 && !landed; y++) {
+            landed = (falling[y + 1] & board[y]) != 0;
+        }
+
+        if (landed) {
+            lastTickLanded = true;
+            for (int y = 0; y < renderableHeight; y++) {
+                board[y] |= falling[y];
+            }
+            lastClearedLayers = clearFullLayers();
+            score += lastClearedLayers;
+            addGarbage();
+            if (hasLost()) {
+                for (int y = 0; y < renderableHeight; y++) {
+                    board[y] = 0;
+                    falling[y] = 0;
+                }
+                isStarted = false;      // player has lost!
+            } else {
+                spawnBlock();
+            }
+        } else {
+            System.arraycopy(falling, 1, falling, 0, renderableHeight - 1);
+            falling[renderableHeight - 1] = 0;
+        }
+    }
+
+    /**
+     * moveLeft: moves the falling block left (x - 1) when it isn't at the edge and won't hit anything
+     * @return true if it moved
+     */
+    public boolean moveLeft() {
+        return move(leftEdge, -depth);
+    }
+
+    /**
+     * moveRight: moves the falling block right (x + 1) when it isn't at the edge and won't hit anything
+     * @return true if it moved
+     */
+    public boolean moveRight() {
+        return move(rightEdge, depth);
+    }
+
+    /**
+     * moveForward: moves the falling block forward (z - 1) when it isn't at the edge and won't hit anything
+     * @return true if it moved
+     */
+    public boolean moveForward() {
+        return move(frontEdge, -1);
+    }
+
+    /**
+     * moveBackward: moves the falling block backward (z + 1) when it isn't at the edge and won't hit anything
+     * @return true if it moved
+     */
+    public boolean moveBackward() {
+        return move(backEdge, 1);
+    }
+
+    private boolean move(long edge, int shift) {
+        for (int y = 0; y < renderableHeight; y++) {
+            if ((falling[y] & edge) != 0) {
+                return false;   // already against the wall
+            }
+        }
+        for (int y = 0; y < renderableHeight; y++) {
+            long moved = shift > 0 ? falling[y] << shift : falling[y] >>> -shift;
+            if ((moved & board[y]) != 0) {
+                return false;   // would hit a landed block
+            }
+            scratch[y] = moved;
+        }
+        System.arraycopy(scratch, 0, falling, 0, renderableHeight);
+        return true;
+    }
+
+    /**
+     * queueGarbage: Adds layers sent over by the other player in a versus match. They're pushed in under the board
+     * the next time one of our blocks lands
+     * @param layers how many layers to add
+     */
+    public void queueGarbage(int layers) {
+        if (layers > 0 && isStarted) {
+            pendingGarbage += layers;
+        }
+    }
+
+    // Pushes the board up and fills the bottom with garbage layers, each with one random hole so it can still be cleared
+    private void addGarbage() {
+        int layers = Math.min(pendingGarbage, renderableHeight);
+        pendingGarbage = 0;
+        if (layers == 0) {
+            return;
+        }
+        System.arraycopy(board, 0, board, layers, renderableHeight - layers);
+        for (int y = 0; y < layers; y++) {
+            int hole = garbageRand.nextInt(width * depth);
+            board[y] = fullLayer & ~(1L << hole);
+        }
+    }
+
+    // Removes full layers in the frame and drops everything above them. A removed layer is checked again, because the
+    // layer that fell into it might be full too
+    private int clearFullLayers() {
+        int cleared = 0;
+        for (int y = 0; y < height; y++) {
+            if (board[y] == fullLayer) {
+                System.arraycopy(board, y + 1, board, y, renderableHeight - 1 - y);
+                board[renderableHeight - 1] = 0;
+                cleared++;
+                y--;
+            }
+        }
+        return cleared;
+    }
+
+    private boolean hasLost() {
+        for (int y = height - 1; y < renderableHeight; y++) {
+            if (board[y] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Places the next block just above the frame
+    private void spawnBlock() {
+        for (int y = 0; y < renderableHeight; y++) {
+            falling[y] = 0;
+        }
+        int piece = pieces.next();
+        lastSpawned = piece;
+        long footprint = pieces.footprint(piece);
+        falling[height] = footprint;
+        if (PieceGenerator.isTall(piece)) {
+            falling[height + 1] = footprint;
+        }
+    }
+
+    /**
+     * copyFrom: Makes this engine an exact copy of another one of the same size. Doesn't allocate, so it's cheap enough to
+     * do every tick for rollback
+     * @param other the engine to copy
+     */
+    public void copyFrom(GameEngine other) {
+        if (other.width != width || other.height != height || other.depth != depth) {
+            throw new IllegalArgumentException("Can't copy a " + other.width + "x" + other.height + "x" + other.depth
+                + " engine into a " + width + "x" + height + "x" + depth + " one");
+        }
+        System.arraycopy(other.board, 0, board, 0, renderableHeight);
+        System.arraycopy(other.falling, 0, falling, 0, renderableHeight);
+        pieces.copyFrom(other.pieces);
+        garbageRand.setState(other.garbageRand.getState());
+        isStarted = other.isStarted;
+        score = other.score;
+        tickCount = other.tickCount;
+        pendingGarbage = other.pendingGarbage;
+        lastClearedLayers = other.lastClearedLayers;
+        lastTickLanded = other.lastTickLanded;
+        lastSpawned = other.lastSpawned;
+    }
+
+    /**
+     * snapshotSize: how many longs saveTo writes. Two for each layer plus five
+     * @return the size of a snapshot in longs
+     */
+    public int snapshotSize() {
+        return renderableHeight * 2 + 5;
+    }
+
+    /**
+     * saveTo: Copies the whole game into part of a long array, like writeState but without packing it into bytes. Doesn't
+     * allocate, so it's cheap enough to do every time a block lands. See UndoHistory
+     * @param snapshot where to write snapshotSize() longs
+     * @param offset where in the array to start
+     */
+    public void saveTo(long[] snapshot, int offset) {
+        System.arraycopy(board, 0, snapshot, offset, renderableHeight);
+        System.arraycopy(falling, 0, snapshot, offset + renderableHeight, renderableHeight);
+        int i = offset + renderableHeight * 2;
+        snapshot[i] = pieces.getRandState();
+        snapshot[i + 1] = pieces.getBagState();
+        snapshot[i + 2] = garbageRand.getState();
+        snapshot[i + 3] = ((long) score << 32) | (tickCount & 0xFFFFFFFFL);
+        snapshot[i + 4] = ((long) pendingGarbage << 1) | (isStarted ? 1 : 0);
+    }
+
+    /**
+     * loadFrom: Puts the game back how it was when saveTo was called on an engine the same size as this one
+     * @param snapshot the array saveTo wrote into
+     * @param offset where in the array it started
+     */
+    public void loadFrom(long[] snapshot, int offset) {
+        System.arraycopy(snapshot, offset, board, 0, renderableHeight);
+        System.arraycopy(snapshot, offset + renderableHeight, falling, 0, renderableHeight);
+        int i = offset + renderableHeight * 2;
+        pieces.setState(snapshot[i], snapshot[i + 1]);
+        garbageRand.setState(snapshot[i + 2]);
+        score = (int) (snapshot[i + 3] >>> 32);
+        tickCount = (int) snapshot[i + 3];
+        pendingGarbage = (int) (snapshot[i + 4] >>> 1);
+        isStarted = (snapshot[i + 4] & 1) != 0;
+        lastClearedLayers = 0;
+        lastTickLanded = false;
+        lastSpawned = -1;
+    }
+
+    /**
+     * stateSize: how many bytes writeState writes
+     * @return the size of the packed state
+     */
+    public int stateSize() {
+        return 1 + layerBytes() * renderableHeight * 2 + 4 + 8 + 8 + 8 + 2 + 4;
+    }
+
+    /**
+     * writeState: Packs everything about the game: both boards a bit per cell, the score, the block generator's random
+     * state and bag, the garbage random generator, garbage waiting to go in and the tick count. The upcoming blocks
+     * aren't written, they're drawn again from the generator's state
+     * @param buffer where to write stateSize() bytes
+     */
+    public void writeState(ByteBuffer buffer) {
+        buffer.put((byte) (isStarted ? 1 : 0));
+        writeLayers(buffer, board);
+        writeLayers(buffer, falling);
+        buffer.putInt(score);
+        buffer.putLong(pieces.getRandState());
+        buffer.putLong(pieces.getBagState());
+        buffer.putLong(garbageRand.getState());
+        buffer.putShort((short) pendingGarbage);
+        buffer.putInt(tickCount);
+    }
+
+    /**
+     * readState: Unpacks a state from writeState of an engine the same size as this one
+     * @param buffer where to read stateSize() bytes from
+     */
+    public void readState(ByteBuffer buffer) {
+        isStarted = (buffer.get() & 1) != 0;
+        readLayers(buffer, board);
+        readLayers(buffer, falling);
+        score = buffer.getInt();
+        long randState = buffer.getLong();
+        pieces.setState(randState, buffer.getLong());
+        garbageRand.setState(buffer.getLong());
+        pendingGarbage = buffer.getShort();
+        tickCount = buffer.getInt();
+        lastClearedLayers = 0;
+        lastTickLanded = false;
+        lastSpawned = -1;
+    }
+
+    private int layerBytes() {
+        return (width * depth + 7) / 8;
+    }
+
+    private void writeLayers(ByteBuffer buffer, long[] layers) {
+        int bytes = layerBytes();
+        for (long layer : layers) {
+            for (int i = 0; i < bytes; i++) {
+                buffer.put((byte) (layer >>> (i * 8)));
+            }
+        }
+    }
+
+    private void readLayers(ByteBuffer buffer, long[] layers) {
+        int bytes = layerBytes();
+        for (int y = 0; y < layers.length; y++) {
+            long layer = 0;
+            for (int i = 0; i < bytes; i++) {
+                layer |= (buffer.get() & 0xFFL) << (i * 8);
+            }
+            layers[y] = layer & fullLayer;
+        }
+    }
+
+    /**
+     * stateHash: A hash of the whole game, for checking that two engines that should agree really do
+     * @return the hash
+     */
+    public long stateHash() {
+        long hash = 0xCBF29CE484222325L;
+        for (int y = 0; y < renderableHeight; y++) {
+            hash = (hash ^ board[y]) * 0x100000001B3L;
+            hash = (hash ^ falling[y]) * 0x100000001B3L;
+        }
+        hash = (hash ^ score) * 0x100000001B3L;
+        hash = (hash ^ pieces.getRandState()) * 0x100000001B3L;
+        hash = (hash ^ pieces.getBagState()) * 0x100000001B3L;
+        hash = (hash ^ garbageRand.getState()) * 0x100000001B3L;
+        hash = (hash ^ pendingGarbage) * 0x100000001B3L;
+        hash = (hash ^ tickCount) * 0x100000001B3L;
+        return (hash ^ (isStarted ? 1 : 0)) * 0x100000001B3L;
+    }
+}
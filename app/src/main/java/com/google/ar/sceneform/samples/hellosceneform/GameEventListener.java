@@ -0,0 +1,19 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * GAME EVENT LISTENER
+ * Lets the UI hear about scores, cleared layers and games ending without the rules knowing
+ * anything about the UI. Events are never delivered in the middle of a tick. Game collects them
+ * and GameScheduler hands them over on the main thread once the frame's ticks are done, so each
+ * board calls its listener at most once a frame however much happened.
+ */
+
+public interface GameEventListener {
+
+    /**
+     * onGameEvents: Tells the listener what happened on a board since the last call
+     * @param game the board
+     * @param events what happened. Only valid during the call, see GameEvents
+     */
+    void onGameEvents(Game game, GameEvents events);
+}
@@ -0,0 +1,39 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * GAME EVENTS
+ * What happened on a board since GameEventListener last heard from it. Everything in one frame is
+ * rolled into one of these: the score is the latest one, cleared layers are added up, and so on.
+ * Game reuses the same one every time, so listeners should copy out what they need rather than
+ * keeping it.
+ */
+
+public class GameEvents {
+
+    public boolean started;             // a new game started, or a saved one was carried on
+    public boolean scoreChanged;
+    public int score;                   // the score now, if scoreChanged
+    public int layersCleared;           // layers removed, added up over every tick
+    public boolean gameOver;
+    public int leaderboardRank;         // where the finished game came on the leaderboard from 1, 0 if it didn't make it or
+                                        // hasn't been ranked yet. It's ranked in the background, so it comes after gameOver
+    public int bestScore;               // the best score on the leaderboard for this board and mode, with leaderboardRank
+
+    /**
+     * isEmpty: lets us know if anything happened
+     * @return true if there's nothing to tell the listener
+     */
+    public boolean isEmpty() {
+        return !started && !scoreChanged && layersCleared == 0 && !gameOver && leaderboardRank == 0;
+    }
+
+    void clear() {
+        started = false;
+        scoreChanged = false;
+        score = 0;
+        layersCleared = 0;
+        gameOver = false;
+        leaderboardRank = 0;
+        bestScore = 0;
+    }
+}
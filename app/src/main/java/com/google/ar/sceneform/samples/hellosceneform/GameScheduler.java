@@ -0,0 +1,169 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * GAME SCHEDULER
+ * One frame listener for every board in the scene. It adds up the frame times and, once a tick's
+ * worth has gone by, ticks all of the running boards one after the other. Boards only touch the
+ * scene for the blocks that changed, so a frame without a tick costs the same however many
+ * boards there are, and a tick costs about as much as the number of blocks that moved.
+ *
+ * The listener is only registered while at least one board is running and the activity is in
+ * the foreground. Boards stop (game over) in the middle of onFrameUpdate, while Sceneform is
+ * looping over its listener list, and removing ourselves from that list there would throw a
+ * ConcurrentModificationException. So anything that asks for the listener to change during a
+ * frame is put off until the frame's finished, see update.
+ *
+ * Boards' GameEventListener calls go through here too. They're posted to the main thread, so they
+ * come after the frame's ticks are finished, with one delivery for every board that had news.
+ */
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.ar.sceneform.FrameTime;
+import com.google.ar.sceneform.Scene;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GameScheduler {
+
+    private static final float TICK_SECONDS = 1.0f;
+
+    private final List<Game> games = new ArrayList<>();
+    private final Scene.OnUpdateListener updateListener = this::onFrameUpdate;    // kept so we can remove the exact same listener later
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private Scene scene;
+    private boolean isListening = false;    // true while updateListener is registered with the scene
+    private boolean isPaused = false;       // true while the activity is in the background
+    private boolean isDispatching = false;  // true while we're inside onFrameUpdate
+    private final Runnable deferredUpdate = this::update;
+    private boolean isUpdatePosted = false; // an update is waiting for the current frame to finish
+    private float deltaTimeCount = 0.0f;    // Used to track how many seconds have passed since the last tick
+    private final List<Game> withEvents = new ArrayList<>();    // boards waiting to tell their listener something
+    private final Runnable deliverEvents = this::deliverEvents;
+    private boolean isDeliveryPosted = false;
+
+    /**
+     * add: Starts ticking a board
+     * @param game the board
+     * @param theScene the scene the board is in
+     */
+    public void add(Game game, Scene theScene) {
+        scene = theScene;
+        if (!games.contains(game)) {
+            games.add(game);
+        }
+        update();
+    }
+
+    /**
+     * pause: Stops every board while the activity is in the background
+     */
+    public void pause() {
+        isPaused = true;
+        update();
+    }
+
+    /**
+     * resume: Carries on after pause
+     */
+    public void resume() {
+        isPaused = false;
+        update();
+    }
+
+    /**
+     * update: Registers the frame listener while a board is running and removes it while they're all idle, paused or
+     * over, so an AR session with nothing going on doesn't spend any time on game logic each frame.
+     * Boards call this whenever they start or stop.
+     */
+    public void update() {
+        if (isDispatching) {
+            // The scene is looping over its listeners right now, and changing the list would break that loop
+            if (!isUpdatePosted) {
+                isUpdatePosted = true;
+                handler.post(deferredUpdate);
+            }
+            return;
+        }
+        isUpdatePosted = false;
+        boolean shouldListen = scene != null && !isPaused && anyStarted();
+        if (shouldListen && !isListening) {
+            scene.addOnUpdateListener(updateListener);
+            isListening = true;
+        } else if (!shouldListen && isListening) {
+            scene.removeOnUpdateListener(updateListener);
+            isListening = false;
+        }
+    }
+
+    private boolean anyStarted() {
+        for (Game game : games) {
+            if (game.isStarted()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * deliverEventsLater: Asks for a board's events to go to its listener once the current frame is done
+     * @param game the board with news
+     */
+    public void deliverEventsLater(Game game) {
+        if (!withEvents.contains(game)) {
+            withEvents.add(game);
+        }
+        if (!isDeliveryPosted) {
+            isDeliveryPosted = true;
+            handler.post(deliverEvents);
+        }
+    }
+
+    private void deliverEvents() {
+        isDeliveryPosted = false;
+        while (!withEvents.isEmpty()) {
+            withEvents.remove(0).deliverEvents();   // a listener might start a new game, which adds it back on
+        }
+    }
+
+    public float getTickAccumulator() {
+        return deltaTimeCount;
+    }
+
+    /**
+     * restoreTickAccumulator: Puts a restored board's tick timer back, so its next block drops when it would have. The
+     * timer is shared, so it's left alone if another board is already running, or that board would get a short or
+     * long tick
+     * @param game the board being restored
+     * @param seconds the time since its last tick, from its snapshot
+     */
+    public void restoreTickAccumulator(Game game, float seconds) {
+        for (Game other : games) {
+            if (other != game && other.isStarted()) {
+                return;
+            }
+        }
+        deltaTimeCount = seconds;
+    }
+
+    private void onFrameUpdate(FrameTime frameTime) {
+        isDispatching = true;
+        try {
+            deltaTimeCount += frameTime.getDeltaSeconds();
+            if (deltaTimeCount > TICK_SECONDS) {
+                deltaTimeCount = 0.0f;
+                for (int i = 0; i < games.size(); i++) {
+                    Game game = games.get(i);
+                    if (game.isStarted()) {
+                        game.gameTick();
+                        game.updateLevelOfDetail();
+                    }
+                }
+            }
+        } finally {
+            isDispatching = false;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * GAME SNAPSHOT
+ * Everything needed to carry on a game exactly where it left off, packed into under a hundred bytes.
+ * MainActivity keeps one per board (see packAll) in the saved instance state Bundle and in app
+ * storage, so games survive rotation, going into the background and the process being killed.
+ *
+ * Layout (big endian):
+ *   byte    version
+ *   byte[3] width, height and depth of the board
+ *   bytes   the engine's state, see GameEngine.writeState
+ *   float   seconds since the last tick
+ */
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GameSnapshot {
+
+    private static final byte VERSION = 3;  // 1 stored boolean arrays, before the rules moved into GameEngine. 2 had no bag
+
+    public boolean isStarted;
+    public float deltaTimeCount;
+    private ByteBuffer engineState;     // positioned at the start of the engine's state
+
+    /**
+     * toBytes: Packs a game
+     * @param engine the game's rules and board
+     * @param deltaTimeCount seconds since the last tick
+     * @return the packed snapshot
+     */
+    public static byte[] toBytes(GameEngine engine, float deltaTimeCount) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + engine.stateSize() + 4);
+        buffer.put(VERSION);
+        buffer.put((byte) engine.getWidth());
+        buffer.put((byte) engine.getHeight());
+        buffer.put((byte) engine.getDepth());
+        engine.writeState(buffer);
+        buffer.putFloat(deltaTimeCount);
+        return buffer.array();
+    }
+
+    /**
+     * fromBytes: Checks a snapshot made by toBytes. Nothing is changed until applyTo is called
+     * @param bytes the packed snapshot
+     * @param engine the engine it's going to be loaded into, which has to be the same size as the one that was saved
+     * @return the snapshot, or null if the bytes aren't a snapshot we understand
+     */
+    public static GameSnapshot fromBytes(byte[] bytes, GameEngine engine) {
+        if (bytes == null || bytes.length != 4 + engine.stateSize() + 4) {
+            return null;    // truncated, maybe the app died half way through writing it
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.get() != VERSION || buffer.get() != engine.getWidth() || buffer.get() != engine.getHeight()
+            || buffer.get() != engine.getDepth()) {
+            return null;
+        }
+        GameSnapshot snapshot = new GameSnapshot();
+        snapshot.engineState = buffer.slice();
+        snapshot.isStarted = (buffer.get(buffer.position()) & 1) != 0;
+        snapshot.deltaTimeCount = buffer.getFloat(bytes.length - 4);
+        return snapshot;
+    }
+
+    /**
+     * applyTo: Loads the saved game into an engine
+     * @param engine the engine passed to fromBytes
+     */
+    public void applyTo(GameEngine engine) {
+        engine.readState(engineState.duplicate());
+    }
+
+    /**
+     * packAll: Packs the snapshots of several boards into one array, for the Bundle and the save file
+     * @param states bytes from toBytes, one per board
+     * @return a count followed by each snapshot with its length in front
+     */
+    public static byte[] packAll(List<byte[]> states) {
+        int size = 1;
+        for (byte[] state : states) {
+            size += 2 + state.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put((byte) states.size());
+        for (byte[] state : states) {
+            buffer.putShort((short) state.length);
+            buffer.put(state);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * unpackAll: Splits up an array made by packAll
+     * @param bytes bytes from packAll
+     * @return the snapshot of each board, empty if the bytes are damaged
+     */
+    public static List<byte[]> unpackAll(byte[] bytes) {
+        List<byte[]> states = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            int count = buffer.get() & 0xFF;
+            for (int i = 0; i < count; i++) {
+                byte[] state = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(state);
+                states.add(state);
+            }
+        } catch (BufferUnderflowException e) {
+            states.clear();
+        }
+        return states;
+    }
+}
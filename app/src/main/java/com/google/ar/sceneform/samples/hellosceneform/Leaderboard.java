@@ -0,0 +1,476 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * LEADERBOARD
+ * The best scores on this phone, kept for each board size and mode.
+ *
+ * Every finished game is appended to scores.log and never changed. Next to it scores.idx holds
+ * the best TOP_SIZE games of every board size and mode, and how much of the log it covers. The
+ * index is read once when the leaderboard is opened, so after that the top scores come straight
+ * from memory however many games have been played. If the app died before the index caught up,
+ * only the end of the log it doesn't cover is read. The whole log is only read if the index is
+ * missing or broken, which could take a while, so the reading is done on the writer thread rather
+ * than whichever thread opened it. submit and top wait for it to finish, but a game takes far
+ * longer than that so they shouldn't ever actually have to.
+ *
+ * submit puts a game in the top list straight away, so the game over screen can show it. Writing
+ * happens on a background thread that takes every game waiting at once, appends them to the log
+ * in one write, then replaces the index. Games shouldn't call submit in the middle of a frame
+ * though, because it has to wait for the leaderboard to be read. submitLater hands the game to the
+ * background thread instead, which ranks it there and says how it did through a SubmitListener.
+ * If the game comes with its Replay, the writer plays it again with ReplayVerifier first, and a
+ * game whose inputs don't give its score is turned away without being ranked or written.
+ *
+ * Log record (big endian):
+ *   long    when the game finished, in milliseconds
+ *   long    the game's seed
+ *   int     score
+ *   byte[3] width, height and depth of the board
+ *   byte    mode
+ *
+ * Index (big endian):
+ *   int     INDEX_MAGIC
+ *   long    bytes of the log it covers
+ *   int     number of board sizes and modes
+ *   then for each of them
+ *     int     how many games
+ *     records like the log's, best first, each followed by a long of where it is in the log
+ */
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+public class Leaderboard implements Closeable {
+    private static final String TAG = Leaderboard.class.getSimpleName();
+
+    public static final int TOP_SIZE = 100;
+    public static final int MODE_NORMAL = 0;
+    public static final int MODE_PRACTICE = 1;
+    public static final int MODE_VERSUS = 2;
+    public static final int REJECTED = -1;     // the rank for a game whose replay didn't check out
+
+    private static final String LOG_NAME = "scores.log";
+    private static final String INDEX_NAME = "scores.idx";
+    private static final int INDEX_MAGIC = 0x424C4931;    // "BLI1"
+    private static final int RECORD_SIZE = 24;
+    private static final int INDEX_RECORD_SIZE = RECORD_SIZE + 8;
+    private static final Entry END_OF_QUEUE = new Entry(0, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * Entry: one finished game
+     */
+    public static class Entry {
+        public final int score;
+        public final long timeMillis;
+        public final long seed;
+        public final int width;
+        public final int height;
+        public final int depth;
+        public final int mode;
+        long logOffset = -1;    // where it is in the log, or -1 until it's been written
+        SubmitListener whenRanked;  // who to tell once the writer has ranked it, only for submitLater
+        Replay replay;              // how it was played, checked before it's ranked. Only for submitLater
+
+        public Entry(int score, long timeMillis, long seed, int width, int height, int depth, int mode) {
+            this.score = score;
+            this.timeMillis = timeMillis;
+            this.seed = seed;
+            this.width = width;
+            this.height = height;
+            this.depth = depth;
+            this.mode = mode;
+        }
+
+        int category() {
+            return Leaderboard.category(width, height, depth, mode);
+        }
+
+        void write(ByteBuffer buffer) {
+            buffer.putLong(timeMillis);
+            buffer.putLong(seed);
+            buffer.putInt(score);
+            buffer.put((byte) width);
+            buffer.put((byte) height);
+            buffer.put((byte) depth);
+            buffer.put((byte) mode);
+        }
+
+        static Entry read(ByteBuffer buffer) {
+            long time = buffer.getLong();
+            long seed = buffer.getLong();
+            int score = buffer.getInt();
+            return new Entry(score, time, seed, buffer.get(), buffer.get(), buffer.get(), buffer.get());
+        }
+    }
+
+    /**
+     * SubmitListener: Hears how a game from submitLater did. It's called on the writer thread, so anything that touches
+     * the UI should be posted to the main thread. A game whose replay didn't check out gets a rank of REJECTED
+     */
+    public interface SubmitListener {
+        void onRanked(Entry entry, int rank, int bestScore);
+    }
+
+    // The best games of one board size and mode, best first. Older games stay ahead of newer ones with the same score
+    private static class TopList {
+        final Entry[] entries = new Entry[TOP_SIZE];
+        int count = 0;
+
+        // returns the rank it went in at, from 1, or 0 if it didn't make it
+        int insert(Entry entry) {
+            int position = count;
+            while (position > 0 && entries[position - 1].score < entry.score) {
+                position--;
+            }
+            if (position == TOP_SIZE) {
+                return 0;
+            }
+            int moving = Math.min(count, TOP_SIZE - 1) - position;
+            System.arraycopy(entries, position, entries, position + 1, moving);
+            entries[position] = entry;
+            count = Math.min(count + 1, TOP_SIZE);
+            return position + 1;
+        }
+    }
+
+    private final File logFile;
+    private final File indexFile;
+    private final Map<Integer, TopList> tops = new HashMap<>();     // guarded by this
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private long writtenLength;     // how much of the log is on disk, guarded by this
+    private boolean isIndexStale;   // the log has games the index doesn't, so the writer should put out a new one
+    private boolean isLoaded = false;   // the writer has read the index and the log, guarded by this
+    private boolean isClosed = false;
+
+    /**
+     * Leaderboard: Opens the leaderboard in a folder, making it if it isn't there. The index is read in the background
+     * @param dir the folder for the log and the index, somewhere in app storage
+     */
+    public Leaderboard(File dir) {
+        dir.mkdirs();
+        logFile = new File(dir, LOG_NAME);
+        indexFile = new File(dir, INDEX_NAME);
+        writer = new Thread(this::writeLoop, "leaderboard-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * category: the key for a board size and mode
+     */
+    private static int category(int width, int height, int depth, int mode) {
+        return (width << 24) | (height << 16) | (depth << 8) | mode;
+    }
+
+    /**
+     * submit: Adds a finished game. It's in the top list as soon as this returns, and written to storage shortly after
+     * @param entry the game
+     * @return where it came on its board size and mode, from 1, or 0 if it didn't make the top TOP_SIZE
+     */
+    public synchronized int submit(Entry entry) {
+        if (isClosed) {
+            throw new IllegalStateException("Leaderboard is closed");
+        }
+        waitUntilLoaded();
+        int rank = topList(entry.category()).insert(entry);
+        queue.add(entry);
+        return rank;
+    }
+
+    /**
+     * submitLater: Adds a finished game without waiting for anything. The writer checks its replay and puts it in the
+     * top list before writing it out, then tells the listener where it came
+     * @param entry the game
+     * @param replay how the game was played, or null if there isn't one (it was carried on from a save) and it's taken
+     *               on trust
+     * @param listener hears the game's rank and the best score on its board size and mode, on the writer thread
+     */
+    public void submitLater(Entry entry, Replay replay, SubmitListener listener) {
+        synchronized (this) {
+            if (isClosed) {
+                throw new IllegalStateException("Leaderboard is closed");
+            }
+        }
+        entry.replay = replay;
+        entry.whenRanked = listener;
+        queue.add(entry);
+    }
+
+    /**
+     * isGenuine: Plays a game's replay again to see if it really scored what it says
+     * @return true if the replay is the same game and gives the same score
+     */
+    static boolean isGenuine(Entry entry, Replay replay) {
+        return replay.seed == entry.seed && replay.finalScore == entry.score
+            && replay.width == entry.width && replay.height == entry.height && replay.depth == entry.depth
+            && ReplayVerifier.findDivergence(replay) == ReplayVerifier.VALID;
+    }
+
+    /**
+     * top: The best games for a board size and mode. Doesn't touch storage, but waits for it to be read if it hasn't been yet
+     * @param count how many to get, up to TOP_SIZE
+     * @return the games, best first
+     */
+    public synchronized List<Entry> top(int width, int height, int depth, int mode, int count) {
+        waitUntilLoaded();
+        TopList list = tops.get(category(width, height, depth, mode));
+        int size = list == null ? 0 : Math.min(count, list.count);
+        List<Entry> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(list.entries[i]);
+        }
+        return result;
+    }
+
+    private TopList topList(int category) {
+        TopList list = tops.get(category);
+        if (list == null) {
+            list = new TopList();
+            tops.put(category, list);
+        }
+        return list;
+    }
+
+    // Only call holding the lock
+    private void waitUntilLoaded() {
+        while (!isLoaded) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;     // give them whatever's there
+            }
+        }
+    }
+
+    // Reads the index, then whatever the log has that the index doesn't. Only call holding the lock
+    private void open() {
+        long covered = readIndex();
+        try (RandomAccessFile log = new RandomAccessFile(logFile, "rw")) {
+            long length = log.length() - log.length() % RECORD_SIZE;
+            if (length != log.length()) {
+                log.setLength(length);      // the app died half way through a record, so it never counted
+            }
+            if (covered > length) {
+                tops.clear();               // the index is newer than the log, something's gone wrong so start again
+                covered = 0;
+            }
+            if (covered < length) {
+                byte[] tail = new byte[(int) (length - covered)];
+                log.seek(covered);
+                log.readFully(tail);
+                ByteBuffer buffer = ByteBuffer.wrap(tail);
+                for (long offset = covered; offset < length; offset += RECORD_SIZE) {
+                    Entry entry = Entry.read(buffer);
+                    entry.logOffset = offset;
+                    topList(entry.category()).insert(entry);
+                }
+            }
+            writtenLength = length;
+            isIndexStale = covered != length;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read score log", e);
+            writtenLength = 0;
+        }
+    }
+
+    // returns how much of the log the index covers, or 0 if there isn't a good index
+    private long readIndex() {
+        if (!indexFile.exists()) {
+            return 0;
+        }
+        try (FileInputStream in = new FileInputStream(indexFile)) {
+            byte[] bytes = new byte[(int) indexFile.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    throw new IOException("Index got shorter while reading it");
+                }
+                read += n;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            if (buffer.getInt() != INDEX_MAGIC) {
+                return 0;
+            }
+            long covered = buffer.getLong();
+            int categories = buffer.getInt();
+            for (int c = 0; c < categories; c++) {
+                int count = buffer.getInt();
+                if (count < 0 || count > TOP_SIZE) {
+                    tops.clear();
+                    return 0;
+                }
+                for (int i = 0; i < count; i++) {
+                    Entry entry = Entry.read(buffer);
+                    entry.logOffset = buffer.getLong();
+                    topList(entry.category()).insert(entry);
+                }
+            }
+            return covered;
+        } catch (IOException | BufferUnderflowException e) {
+            Log.e(TAG, "Score index is broken, reading the whole log instead", e);
+            tops.clear();
+            return 0;
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        boolean done = false;
+        synchronized (this) {
+            try {
+                open();
+            } finally {
+                isLoaded = true;
+                notifyAll();
+            }
+        }
+        if (isIndexStale) {
+            try {
+                writeIndex();   // so the next open doesn't have to read the log again
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to save score index", e);
+            }
+        }
+        while (!done) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(batch);
+            if (batch.get(batch.size() - 1) == END_OF_QUEUE) {
+                batch.remove(batch.size() - 1);
+                done = true;
+            }
+            rankWaiting(batch);
+            try {
+                appendToLog(batch);
+                writeIndex();
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to save scores", e);
+            }
+            batch.clear();
+        }
+    }
+
+    // Checks the games from submitLater, puts them in the top lists and tells whoever sent them how they did. Games that
+    // don't check out are taken out of the batch so they're never written
+    private void rankWaiting(List<Entry> batch) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            Entry entry = batch.get(i);
+            SubmitListener listener = entry.whenRanked;
+            if (listener == null) {
+                continue;
+            }
+            entry.whenRanked = null;
+            Replay replay = entry.replay;
+            entry.replay = null;    // it's done its job, and the top list shouldn't hold every input of every game
+            if (replay != null && !isGenuine(entry, replay)) {
+                Log.w(TAG, "Turned away a score of " + entry.score + " whose replay doesn't give it");
+                batch.remove(i);
+                listener.onRanked(entry, REJECTED, 0);
+                continue;
+            }
+            int rank;
+            int bestScore;
+            synchronized (this) {
+                TopList list = topList(entry.category());
+                rank = list.insert(entry);
+                bestScore = list.entries[0].score;
+            }
+            listener.onRanked(entry, rank, bestScore);
+        }
+    }
+
+    // Adds a batch of games to the end of the log in one go
+    private void appendToLog(List<Entry> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(batch.size() * RECORD_SIZE);
+        for (Entry entry : batch) {
+            entry.write(buffer);
+        }
+        try (FileOutputStream out = new FileOutputStream(logFile, true)) {
+            out.write(buffer.array());
+            out.getFD().sync();
+        }
+        synchronized (this) {
+            for (Entry entry : batch) {
+                entry.logOffset = writtenLength;
+                writtenLength += RECORD_SIZE;
+            }
+        }
+    }
+
+    // Replaces the index with the top lists, leaving out games that were submitted but aren't in the log yet. The new
+    // index is written next to the old one and swapped in, so a crash leaves one or the other
+    private void writeIndex() throws IOException {
+        ByteBuffer buffer;
+        synchronized (this) {
+            buffer = ByteBuffer.allocate(4 + 8 + 4 + tops.size() * (4 + TOP_SIZE * INDEX_RECORD_SIZE));
+            buffer.putInt(INDEX_MAGIC);
+            buffer.putLong(writtenLength);
+            buffer.putInt(tops.size());
+            for (TopList list : tops.values()) {
+                int countAt = buffer.position();
+                buffer.putInt(0);
+                int count = 0;
+                for (int i = 0; i < list.count; i++) {
+                    Entry entry = list.entries[i];
+                    if (entry.logOffset >= 0) {
+                        entry.write(buffer);
+                        buffer.putLong(entry.logOffset);
+                        count++;
+                    }
+                }
+                buffer.putInt(countAt, count);
+            }
+        }
+        File temp = new File(indexFile.getPath() + ".new");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(buffer.array(), 0, buffer.position());
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(indexFile)) {
+            throw new IOException("Unable to replace " + indexFile);
+        }
+    }
+
+    /**
+     * close: Writes out everything submitted so far and stops the writer
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+        }
+        queue.add(END_OF_QUEUE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * LOCKSTEP CONNECTION
+ * Runs a LockstepSession over a TCP socket between two devices on the same network. One device
+ * hosts and picks the seed, the other joins. TCP gives us the inputs in order without us having to
+ * resend anything, and Nagle's algorithm is turned off so a one byte input goes straight out.
+ *
+ * A background thread reads messages off the socket. Everything else, including the session,
+ * belongs to whoever calls step, which should be the same thread every time.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class LockstepConnection implements Closeable {
+
+    public static final int DEFAULT_PORT = 47474;
+
+    private static final int MAGIC = 0x424C4B52;    // "BLKR"
+    private static final int PROTOCOL_VERSION = 1;
+    private static final int MAX_MESSAGE = 64 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final LockstepSession session;
+    private final ConcurrentLinkedQueue<byte[]> incoming = new ConcurrentLinkedQueue<>();
+    private final Thread reader;
+    private volatile IOException readError;
+
+    private LockstepConnection(Socket socket, DataInputStream in, OutputStream out, LockstepSession session) {
+        this.socket = socket;
+        this.out = out;
+        this.session = session;
+        reader = new Thread(() -> readLoop(in), "lockstep-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * host: Waits for the other player to connect and starts a match as player 0
+     * @param server a socket that's listening for them
+     * @param seed the match's seed, sent to the other player
+     * @return the connection
+     */
+    public static LockstepConnection host(ServerSocket server, long seed) throws IOException {
+        Socket socket = server.accept();
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(MAGIC);
+            out.writeByte(PROTOCOL_VERSION);
+            out.writeLong(seed);
+            out.flush();
+            return new LockstepConnection(socket, in, out, new LockstepSession(0, seed));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * join: Connects to a host and starts a match as player 1
+     * @param host the host's address
+     * @param port the port it's listening on, usually DEFAULT_PORT
+     * @return the connection
+     */
+    public static LockstepConnection join(String host, int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            if (in.readInt() != MAGIC || in.readByte() != PROTOCOL_VERSION) {
+                throw new IOException("Not a Blockris host, or a different version");
+            }
+            long seed = in.readLong();
+            return new LockstepConnection(socket, in, out, new LockstepSession(1, seed));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void readLoop(DataInputStream in) {
+        try {
+            while (true) {
+                int length = (int) VarInt.read(in);
+                if (length <= 0 || length > MAX_MESSAGE) {
+                    throw new IOException("Bad lockstep message length " + length);
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                incoming.add(body);
+            }
+        } catch (IOException e) {
+            readError = e;
+        }
+    }
+
+    public LockstepSession getSession() {
+        return session;
+    }
+
+    /**
+     * step: Takes in whatever the other player has sent, plays our next tick and sends our input
+     * @param localInput what we pressed this tick, see PlayerInput
+     * @return false if we had to wait for the other player and the tick wasn't played. Call again with the same input
+     * @throws IOException if the other player has gone
+     */
+    public boolean step(long localInput) throws IOException {
+        poll();
+        boolean advanced = session.advance(localInput);
+        session.flush(out);
+        out.flush();
+        return advanced;
+    }
+
+    /**
+     * poll: Takes in whatever the other player has sent without playing a tick
+     * @throws IOException if the other player has gone
+     */
+    public void poll() throws IOException {
+        byte[] body;
+        while ((body = incoming.poll()) != null) {
+            session.receiveMessage(ByteBuffer.wrap(body));
+        }
+        if (readError != null) {
+            throw readError;
+        }
+    }
+
+    /**
+     * flush: Sends anything receiving made us queue up, like hashes, without playing a tick
+     */
+    public void flush() throws IOException {
+        session.flush(out);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,333 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * LOCKSTEP SESSION
+ * Keeps one device's copy of a VersusMatch in step with the other device's copy. Only inputs go
+ * over the network, never boards: both devices run the same deterministic match on the same inputs.
+ *
+ * We don't wait for the other player's input before playing a tick. We guess they pressed nothing
+ * and carry on, and keep the state from before every tick we guessed. When their real input turns
+ * up and it wasn't nothing, we go back to the tick it was for and play forward again (rollback).
+ * We never get more than ROLLBACK_WINDOW ticks ahead of the other player; if we do, advance
+ * refuses until their inputs catch up.
+ *
+ * Every HASH_INTERVAL ticks, once both inputs are known, each side sends a hash of the match. If
+ * they ever disagree, player 0 (the host) sends its whole match and player 1 loads it (resync).
+ *
+ * Messages, each with its length in front as a varint (see VarInt):
+ *   INPUTS  type, first tick, count, then one input per tick. Every unsent tick goes in one message
+ *   HASH    type, tick, 8 byte hash of the match before that tick was played
+ *   STATE   type, tick, the match before that tick was played, see VersusMatch.writeState
+ *
+ * Not thread safe. LockstepConnection calls it from one thread.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+public class LockstepSession {
+
+    public static final int ROLLBACK_WINDOW = 16;
+    public static final int HASH_INTERVAL = 8;
+
+    // Inputs and states are kept for long enough to replay from the oldest tick a resync can name. The other player can be
+    // ROLLBACK_WINDOW ahead of us, and a resync can be up to twice that behind
+    private static final int HISTORY = ROLLBACK_WINDOW * 4;
+    private static final int HASH_HISTORY = 8;
+
+    private static final int MSG_INPUTS = 1;
+    private static final int MSG_HASH = 2;
+    private static final int MSG_STATE = 3;
+
+    private final int localPlayer;
+    private final VersusMatch match;
+    private final VersusMatch[] states = new VersusMatch[HISTORY];    // states[t % HISTORY] is the match before tick t
+    private final long[] localInputs = new long[HISTORY];
+    private final long[] remoteInputs = new long[HISTORY];
+    private final int[] localHashTicks = new int[HASH_HISTORY];
+    private final long[] localHashes = new long[HASH_HISTORY];
+    private final int[] remoteHashTicks = new int[HASH_HISTORY];
+    private final long[] remoteHashes = new long[HASH_HISTORY];
+    private final ByteBuffer outgoing;
+    private final ByteBuffer message;       // scratch for building one message before it gets its length
+
+    private int remoteTicks = 0;            // we have the other player's inputs for every tick before this one
+    private int unsentTick = 0;             // our inputs from this tick on haven't been sent yet
+    private int nextHashTick = HASH_INTERVAL;
+
+    private int rollbacks = 0;
+    private int rolledBackTicks = 0;
+    private int desyncs = 0;
+    private int resyncs = 0;
+    private long bytesSent = 0;
+
+    /**
+     * LockstepSession: Starts our side of a match
+     * @param localPlayer 0 on the device that hosts, 1 on the device that joins
+     * @param seed the match's seed, the same on both devices
+     */
+    public LockstepSession(int localPlayer, long seed) {
+        this.localPlayer = localPlayer;
+        match = new VersusMatch(seed);
+        for (int i = 0; i < HISTORY; i++) {
+            states[i] = new VersusMatch(seed);
+        }
+        for (int i = 0; i < HASH_HISTORY; i++) {
+            localHashTicks[i] = -1;
+            remoteHashTicks[i] = -1;
+        }
+        int stateMessage = 1 + 5 + match.stateSize();
+        message = ByteBuffer.allocate(Math.max(stateMessage, 1 + 5 + 5 + HISTORY * 10));
+        outgoing = ByteBuffer.allocate(message.capacity() * 4);
+    }
+
+    public int getLocalPlayer() {
+        return localPlayer;
+    }
+
+    /**
+     * getMatch: our current guess at the match. Boards may still change when the other player's inputs arrive
+     */
+    public VersusMatch getMatch() {
+        return match;
+    }
+
+    public int getTick() {
+        return match.getTick();
+    }
+
+    public int getRemoteTicks() {
+        return remoteTicks;
+    }
+
+    /**
+     * getConfirmedTick: every tick before this one was played with both players' real inputs
+     */
+    public int getConfirmedTick() {
+        return Math.min(remoteTicks, match.getTick());
+    }
+
+    public int getRollbacks() {
+        return rollbacks;
+    }
+
+    public int getRolledBackTicks() {
+        return rolledBackTicks;
+    }
+
+    public int getDesyncs() {
+        return desyncs;
+    }
+
+    public int getResyncs() {
+        return resyncs;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * canAdvance: false while we're ROLLBACK_WINDOW ticks ahead of the other player and have to wait for them
+     */
+    public boolean canAdvance() {
+        return match.getTick() - remoteTicks < ROLLBACK_WINDOW;
+    }
+
+    /**
+     * advance: Plays our next tick, guessing the other player's input if it hasn't arrived yet
+     * @param localInput what we pressed this tick, see PlayerInput
+     * @return false if we're too far ahead and the tick wasn't played. Try again with the same input later
+     */
+    public boolean advance(long localInput) {
+        if (!canAdvance()) {
+            return false;
+        }
+        int tick = match.getTick();
+        localInputs[tick % HISTORY] = localInput;
+        states[tick % HISTORY].copyFrom(match);
+        stepMatch(tick);
+        checkHashes();
+        return true;
+    }
+
+    private void stepMatch(int tick) {
+        long local = localInputs[tick % HISTORY];
+        long remote = tick < remoteTicks ? remoteInputs[tick % HISTORY] : PlayerInput.NONE;
+        if (localPlayer == 0) {
+            match.step(local, remote);
+        } else {
+            match.step(remote, local);
+        }
+    }
+
+    // Puts the match back to how it was before a tick and plays every tick since then again
+    private void replayFrom(int fromTick) {
+        int currentTick = match.getTick();
+        match.copyFrom(states[fromTick % HISTORY]);
+        for (int tick = fromTick; tick < currentTick; tick++) {
+            states[tick % HISTORY].copyFrom(match);
+            stepMatch(tick);
+        }
+    }
+
+    /**
+     * receive: Handles a stream of messages from the other player
+     * @param frames one or more messages, each with its length in front
+     */
+    public void receive(ByteBuffer frames) {
+        while (frames.hasRemaining()) {
+            int length = (int) VarInt.read(frames);
+            ByteBuffer body = frames.slice();
+            body.limit(length);
+            frames.position(frames.position() + length);
+            receiveMessage(body);
+        }
+    }
+
+    /**
+     * receiveMessage: Handles one message from the other player, without the length in front
+     */
+    public void receiveMessage(ByteBuffer body) {
+        int type = body.get();
+        int tick = (int) VarInt.read(body);
+        if (type == MSG_INPUTS) {
+            receiveInputs(tick, body);
+        } else if (type == MSG_HASH) {
+            receiveHash(tick, body.getLong());
+        } else if (type == MSG_STATE) {
+            receiveState(tick, body);
+        } else {
+            throw new IllegalArgumentException("Unknown lockstep message " + type);
+        }
+        checkHashes();
+    }
+
+    private void receiveInputs(int firstTick, ByteBuffer body) {
+        int count = (int) VarInt.read(body);
+        int replayFrom = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            int tick = firstTick + i;
+            long input = VarInt.read(body);
+            if (tick < remoteTicks) {
+                continue;   // already have it
+            }
+            if (tick > remoteTicks) {
+                throw new IllegalStateException("Missing inputs for ticks " + remoteTicks + " to " + (tick - 1));
+            }
+            remoteInputs[tick % HISTORY] = input;
+            remoteTicks++;
+            if (tick < match.getTick() && input != PlayerInput.NONE) {
+                replayFrom = Math.min(replayFrom, tick);   // we guessed wrong
+            }
+        }
+        if (replayFrom != Integer.MAX_VALUE) {
+            rollbacks++;
+            rolledBackTicks += match.getTick() - replayFrom;
+            replayFrom(replayFrom);
+        }
+    }
+
+    private void receiveHash(int tick, long hash) {
+        int slot = (tick / HASH_INTERVAL) % HASH_HISTORY;
+        remoteHashTicks[slot] = tick;
+        remoteHashes[slot] = hash;
+        compareHashes(slot);
+    }
+
+    private void receiveState(int tick, ByteBuffer body) {
+        int currentTick = match.getTick();
+        if (tick > currentTick || currentTick - tick >= HISTORY) {
+            throw new IllegalStateException("Can't resync to tick " + tick + " from tick " + currentTick);
+        }
+        resyncs++;
+        if (tick == currentTick) {
+            match.readState(body);
+        } else {
+            states[tick % HISTORY].readState(body);
+            replayFrom(tick);
+        }
+    }
+
+    // Hashes every tick that has become confirmed since last time and queues the hash for the other player
+    private void checkHashes() {
+        while (nextHashTick <= getConfirmedTick()) {
+            int tick = nextHashTick;
+            VersusMatch state = tick == match.getTick() ? match : states[tick % HISTORY];
+            int slot = (tick / HASH_INTERVAL) % HASH_HISTORY;
+            localHashTicks[slot] = tick;
+            localHashes[slot] = state.stateHash();
+            message.clear();
+            message.put((byte) MSG_HASH);
+            VarInt.write(tick, message);
+            message.putLong(localHashes[slot]);
+            queueMessage();
+            compareHashes(slot);
+            nextHashTick += HASH_INTERVAL;
+        }
+    }
+
+    private void compareHashes(int slot) {
+        if (localHashTicks[slot] < 0 || localHashTicks[slot] != remoteHashTicks[slot]) {
+            return;     // haven't got both yet
+        }
+        boolean same = localHashes[slot] == remoteHashes[slot];
+        remoteHashTicks[slot] = -1;
+        if (same) {
+            return;
+        }
+        desyncs++;
+        if (localPlayer == 0) {
+            // We're the host, so our match is the right one. Send it from the newest tick both inputs are in for.
+            // The other side needs all our inputs up to there before it can load it, so they go first
+            sendInputs();
+            int tick = getConfirmedTick();
+            VersusMatch state = tick == match.getTick() ? match : states[tick % HISTORY];
+            message.clear();
+            message.put((byte) MSG_STATE);
+            VarInt.write(tick, message);
+            state.writeState(message);
+            queueMessage();
+        }
+    }
+
+    // Puts every input we haven't sent yet into one message
+    private void sendInputs() {
+        int currentTick = match.getTick();
+        if (unsentTick == currentTick) {
+            return;
+        }
+        message.clear();
+        message.put((byte) MSG_INPUTS);
+        VarInt.write(unsentTick, message);
+        VarInt.write(currentTick - unsentTick, message);
+        for (int tick = unsentTick; tick < currentTick; tick++) {
+            VarInt.write(localInputs[tick % HISTORY], message);
+        }
+        unsentTick = currentTick;
+        queueMessage();
+    }
+
+    private void queueMessage() {
+        message.flip();
+        if (outgoing.remaining() < message.remaining() + 5) {
+            throw new IllegalStateException("Lockstep messages aren't being flushed");
+        }
+        VarInt.write(message.remaining(), outgoing);
+        outgoing.put(message);
+    }
+
+    /**
+     * flush: Writes everything waiting to go to the other player: one message with all our unsent inputs, then any
+     * hashes or state. Call it once after each advance, the socket gets one write however many ticks that was
+     * @param out the connection to the other player. It isn't flushed
+     */
+    public void flush(OutputStream out) throws IOException {
+        sendInputs();
+        outgoing.flip();
+        bytesSent += outgoing.remaining();
+        out.write(outgoing.array(), outgoing.arrayOffset() + outgoing.position(), outgoing.remaining());
+        outgoing.clear();
+    }
+}
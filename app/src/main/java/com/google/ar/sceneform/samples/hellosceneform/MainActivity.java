@@ -21,10 +21,13 @@ import android.content.Context;
 import android.os.Build;
 import android.os.Build.VERSION_CODES;
 import android.os.Bundle;
+import android.support.v4.util.AtomicFile;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.ar.core.Anchor;
@@ -32,6 +35,15 @@ import com.google.ar.core.HitResult;
 import com.google.ar.core.Plane;
 import com.google.ar.sceneform.ux.ArFragment;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * This is an example activity that uses the Sceneform UX package to make common AR tasks easier.
  */
@@ -44,15 +56,35 @@ import com.google.ar.sceneform.ux.ArFragment;
  * It has been modified as allowed by the Apache v.2.0 license
  */
 
-public class MainActivity extends AppCompatActivity implements View.OnClickListener {
+public class MainActivity extends AppCompatActivity implements View.OnClickListener, GameEventListener {
     private static final String TAG = MainActivity.class.getSimpleName();
     private static final double MIN_OPENGL_VERSION = 3.0;
+    private static final String STATE_KEY = "game_state";
+    private static final String SAVE_FILE_NAME = "game.snapshot";
+    private static final String LEADERBOARD_DIR_NAME = "leaderboard";
+    private static final String TELEMETRY_DIR_NAME = "telemetry";
+    private static final String RECORDINGS_DIR_NAME = "recordings";
+    public static final String EXTRA_PRACTICE = "practice";    // set by WelcomeActivity to play with undo turned on
+
+
+    private static final int MAX_BOARDS = 4;    // One is a normal game. The rest are for the showroom, where boards are set up on different planes
 
 
     private ArFragment arFragment;
-    private boolean anchorSet = false;
+    private BlockRenderables renderables;   // the models, loaded once for every board
+    private GameScheduler scheduler;        // ticks every board together
+    private Leaderboard leaderboard;        // the best scores, shared by every board
+    private Telemetry telemetry;            // how the game is played, shared by every board
 
-    private Game theGame;             // The actual game object. we only want to create one of these on the first tap
+    private final List<Game> games = new ArrayList<>();             // Every board in the scene. A board is created the first time a plane is tapped
+    private final Map<Plane, Game> gamesByPlane = new HashMap<>();  // Which board sits on which plane, so tapping a board's plane picks it
+    private Game theGame;             // The board the buttons control, the last one tapped. null until the first tap
+    private final List<byte[]> pendingStates = new ArrayList<>();   // Saved games waiting for the player to tap a plane so we have somewhere to put them
+    private boolean practice;         // Practice mode, every board gets an undo history
+    private TextView nextPreview;     // Which blocks are coming up on the board being played
+    private boolean isPlacingBoard;   // New board was pressed, so the next tap on an empty plane puts a board there
+    private SpectatorStream recording;    // Where the board being recorded goes, or null. See SpectatorStream
+    private Game recordedGame;        // The board being recorded, which might not be the one being played any more
 
 
     // NOTICE: This function came as part of the Google ARCore sample library.
@@ -75,7 +107,23 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         setContentView(R.layout.activity_ux);
         arFragment = (ArFragment) getSupportFragmentManager().findFragmentById(R.id.ux_fragment);
 
-        theGame = new Game(this);
+        renderables = new BlockRenderables(this);
+        scheduler = new GameScheduler();
+        leaderboard = new Leaderboard(new File(getFilesDir(), LEADERBOARD_DIR_NAME));
+        telemetry = new Telemetry(new File(getFilesDir(), TELEMETRY_DIR_NAME), Telemetry.DEFAULT_CAPACITY,
+            Telemetry.DEFAULT_FLUSH_MILLIS);
+
+        // Pick up games that were interrupted. They can't be shown until there's a plane to put them on, so hold on to them until the player taps
+        byte[] savedState = savedInstanceState != null ? savedInstanceState.getByteArray(STATE_KEY) : null;
+        if (savedState == null) {
+            savedState = readSavedGame();
+        }
+        if (savedState != null) {
+            pendingStates.addAll(GameSnapshot.unpackAll(savedState));
+        }
+        if (!pendingStates.isEmpty()) {
+            Toast.makeText(this, "Tap a plane to carry on your game", Toast.LENGTH_LONG).show();
+        }
 
         View leftButtonListener = findViewById(R.id.button);
         leftButtonListener.setOnClickListener(this);
@@ -89,18 +137,61 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         View backwardButtonListener = findViewById(R.id.button4);
         backwardButtonListener.setOnClickListener(this);
 
+        // The undo button only shows up in practice mode
+        practice = getIntent().getBooleanExtra(EXTRA_PRACTICE, false);
+        View undoButtonListener = findViewById(R.id.undo_button);
+        undoButtonListener.setOnClickListener(this);
+        undoButtonListener.setVisibility(practice ? View.VISIBLE : View.GONE);
+
+        nextPreview = findViewById(R.id.next_preview);
+
+        // Extra boards for the showroom. ARCore often sees one table as a few separate planes, so a tap on an empty
+        // plane only makes a new board when the player has asked for one
+        View addBoardButtonListener = findViewById(R.id.add_board_button);
+        addBoardButtonListener.setOnClickListener(this);
+
+        // Recordings can be pulled off the phone and played back with SpectatorClient
+        View recordButtonListener = findViewById(R.id.record_button);
+        recordButtonListener.setOnClickListener(this);
+
         arFragment.setOnTapArPlaneListener(
             (HitResult hitResult, Plane plane, MotionEvent motionEvent) -> {
 
-                if (!theGame.isStarted()) {     // Make sure this is the first game we are creating
-                    if (!anchorSet) {
-                        Anchor anchor = hitResult.createAnchor();
-                        theGame.createGame(anchor, arFragment);
-                        anchorSet = true;
-                    } else {
-                        theGame.restart(arFragment);
+                // Planes get merged together as ARCore learns more about the room, so always go by the plane that's left
+                Plane topPlane = plane;
+                while (topPlane.getSubsumedBy() != null) {
+                    topPlane = topPlane.getSubsumedBy();
+                }
+
+                Game tappedGame = gamesByPlane.get(topPlane);
+                if (tappedGame == null && (theGame == null || isPlacingBoard)) {     // A plane without a board, so put a new one there
+                    isPlacingBoard = false;
+                    Anchor anchor = hitResult.createAnchor();
+                    if (theGame != null) {
+                        theGame.setNextPreview(null);
+                    }
+                    theGame = new Game(this, renderables, scheduler);
+                    theGame.setPracticeMode(practice);
+                    theGame.setLeaderboard(leaderboard);
+                    theGame.setTelemetry(telemetry, games.size());
+                    theGame.setGameEventListener(this);
+                    theGame.createGame(anchor, arFragment, pendingStates.isEmpty() ? null : pendingStates.remove(0));
+                    theGame.setNextPreview(nextPreview);
+                    games.add(theGame);
+                    gamesByPlane.put(topPlane, theGame);
+                    if (!pendingStates.isEmpty()) {
+                        Toast.makeText(this, "Press New board and tap a plane to carry on your other boards", Toast.LENGTH_LONG).show();
                     }
+                    return;
+                }
 
+                if (tappedGame != null && tappedGame != theGame) {
+                    theGame.setNextPreview(null);
+                    theGame = tappedGame;
+                    theGame.setNextPreview(nextPreview);
+                }   // otherwise it's a bit of plane next to a board, so the tap goes to the board being played
+                if (!theGame.isStarted()) {
+                    theGame.restart();
                 }else{
                     theGame.gameTick();
                 }
@@ -109,6 +200,135 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     }
 
 
+    /**
+     * onSaveInstanceState: keeps the game in the Bundle so it survives the activity being recreated
+     */
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        byte[] state = currentState();
+        if (state != null) {
+            outState.putByteArray(STATE_KEY, state);
+        }
+    }
+
+    /**
+     * onResume: carries the game on after onPause
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (scheduler != null) {
+            scheduler.resume();
+        }
+    }
+
+    /**
+     * onPause: stops the game while we're in the background, and writes it to app storage too, because the Bundle doesn't
+     * survive the app being swiped away
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (scheduler != null) {
+            scheduler.pause();
+            writeSavedGame(currentState());
+        }
+    }
+
+    /**
+     * onDestroy: makes sure every score and telemetry event has been written before we go
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (recording != null) {
+            stopRecording();
+        }
+        if (leaderboard != null) {
+            leaderboard.close();
+        }
+        if (telemetry != null) {
+            telemetry.close();
+        }
+    }
+
+    /**
+     * onGameEvents: shows what happened on a board. This comes after the frame's ticks, with everything from that frame
+     * rolled together, so a few layers going at once is one message not several
+     */
+    @Override
+    public void onGameEvents(Game game, GameEvents events) {
+        if (events.gameOver) {
+            String message = "Game over, final score: " + events.score;
+            if (events.leaderboardRank > 0) {
+                message += "\nNumber " + events.leaderboardRank + " on the leaderboard, best is " + events.bestScore;
+            }
+            Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+        } else if (events.leaderboardRank > 0) {   // the leaderboard usually gets back to us a moment after the game over
+            Toast.makeText(this, "Number " + events.leaderboardRank + " on the leaderboard, best is " + events.bestScore,
+                Toast.LENGTH_LONG).show();
+        } else if (events.layersCleared > 0) {
+            Toast.makeText(this, "Score: " + events.score, Toast.LENGTH_SHORT).show();
+        } else if (events.started) {
+            Toast.makeText(this, "New Game", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * currentState: the games that should be carried on if we get interrupted now
+     * @return the running boards and any saved games that haven't been resumed yet, or null if there's nothing worth keeping
+     */
+    private byte[] currentState() {
+        List<byte[]> states = new ArrayList<>();
+        for (Game game : games) {
+            if (game.isStarted()) {
+                states.add(game.saveState());
+            }
+        }
+        states.addAll(pendingStates);
+        return states.isEmpty() ? null : GameSnapshot.packAll(states);
+    }
+
+    /**
+     * readSavedGame: reads the games written by writeSavedGame
+     * @return the saved games from GameSnapshot.packAll, or null if there aren't any
+     */
+    private byte[] readSavedGame() {
+        AtomicFile file = new AtomicFile(new File(getFilesDir(), SAVE_FILE_NAME));
+        try {
+            return file.readFully();
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read saved game", e);
+            return null;
+        }
+    }
+
+    /**
+     * writeSavedGame: saves the games to app storage, or deletes the old save if there's no game to keep
+     * @param state bytes from currentState, or null
+     */
+    private void writeSavedGame(byte[] state) {
+        AtomicFile file = new AtomicFile(new File(getFilesDir(), SAVE_FILE_NAME));
+        if (state == null) {
+            file.delete();
+            return;
+        }
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            out.write(state);
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to save game", e);
+            if (out != null) {
+                file.failWrite(out);
+            }
+        }
+    }
+
     // NOTICE: This function came as part of the Google ARCore sample library. It is used here in accordance with the Apache v.2.0 license
     /**
      * Returns false and displays an error message if Sceneform can not run, true if Sceneform can run
@@ -146,7 +366,18 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
      */
     @Override
     public void onClick(View v) {
-        if (theGame.isStarted()) {
+        if (v == findViewById(R.id.add_board_button)) {
+            if (games.size() >= MAX_BOARDS) {
+                Toast.makeText(this, "There can only be " + MAX_BOARDS + " boards", Toast.LENGTH_SHORT).show();
+            } else {
+                isPlacingBoard = true;
+                Toast.makeText(this, "Tap a plane for the new board", Toast.LENGTH_SHORT).show();
+            }
+        } else if (v == findViewById(R.id.record_button)) {
+            toggleRecording((Button) v);
+        } else if (theGame != null && v == findViewById(R.id.undo_button)) {
+            theGame.undo();     // allowed after losing too, it brings the game back
+        } else if (theGame != null && theGame.isStarted()) {
             if (v == findViewById(R.id.button)) {
                 theGame.userPressedLeft();
             } else if (v == findViewById(R.id.button2)) {
@@ -158,4 +389,48 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             }
         }
     }
+
+    /**
+     * toggleRecording: starts recording the board being played to a file, or stops the recording that's going
+     * @param button the Record button, which says Stop while recording
+     */
+    private void toggleRecording(Button button) {
+        if (recording != null) {
+            stopRecording();
+            button.setText("Record");
+            Toast.makeText(this, "Recording saved", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (theGame == null) {
+            Toast.makeText(this, "Tap a plane to put a board down first", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        File dir = new File(getFilesDir(), RECORDINGS_DIR_NAME);
+        dir.mkdirs();
+        File file = new File(dir, "board-" + System.currentTimeMillis() + ".spectate");
+        try {
+            recording = SpectatorStream.toFile(theGame.getEngine(), file);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to start recording", e);
+            Toast.makeText(this, "Couldn't start recording", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        recordedGame = theGame;
+        recordedGame.setSpectatorStream(recording);
+        button.setText("Stop");
+    }
+
+    /**
+     * stopRecording: finishes the recording off. It only waits for the last few frames to be written
+     */
+    private void stopRecording() {
+        recordedGame.setSpectatorStream(null);
+        try {
+            recording.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to finish recording", e);
+        }
+        recording = null;
+        recordedGame = null;
+    }
 }
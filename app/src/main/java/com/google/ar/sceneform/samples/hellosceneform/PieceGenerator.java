@@ -0,0 +1,271 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * PIECE GENERATOR
+ * Decides which blocks come up and where, a few blocks ahead of time so the player can see what's
+ * coming. The upcoming blocks sit in a ring that's made once and refilled as blocks are taken, so
+ * taking one doesn't allocate.
+ *
+ * Everything comes from the seed. The random numbers are drawn in the same order Game always drew
+ * them (selection, x, z, then the limited x or z), so with PiecePolicy.CLASSIC a seed gives the
+ * same blocks it always has, however far ahead we look.
+ *
+ * A generator isn't synchronized and belongs to one engine. For lots of games at once (tests,
+ * replay checking, benchmarks) give each thread its own engine, with seeds from splitSeed, so the
+ * threads never share a generator or wait on each other.
+ *
+ * A block is packed into an int: the selection (see PiecePolicy) in the low byte, then x and z.
+ * x and z are the cell with the lowest x and z that the block covers.
+ */
+
+public class PieceGenerator {
+
+    private static final int BAG_BITS = 5;
+    private static final long BAG_COUNT_MASK = (1L << BAG_BITS) - 1;
+    private static final String[] NAMES = {"cube", "bar", "bar", "bar", "bar", "tall", "tall", "L", "L", "L", "L"};
+
+    private final int width;
+    private final int depth;
+    private final PiecePolicy policy;
+    private final long fullBag;         // every selection's weight, the bag when it's just been refilled
+    private final SeededRandom rand;
+    private final int[] queue;          // the blocks coming up, starting at head
+    private final long[] randAfter;     // the random state just after each queued block was drawn
+    private final long[] bagAfter;      // and the bag
+    private int head = 0;
+    private long headRand;              // the random state before the block at head was drawn
+    private long headBag;
+    private long bag;                   // what's left in the bag after the last queued block, 5 bits per selection
+
+    /**
+     * PieceGenerator: Makes a generator and fills its queue
+     * @param width cells along x of the board the blocks are for
+     * @param depth cells along z
+     * @param seed decides which blocks come up
+     * @param policy how likely each block is
+     * @param previewSize how many blocks to know about ahead of time, at least 1
+     */
+    public PieceGenerator(int width, int depth, long seed, PiecePolicy policy, int previewSize) {
+        if (previewSize < 1) {
+            throw new IllegalArgumentException("Need to look at least 1 block ahead, not " + previewSize);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.policy = policy;
+        long full = 0;
+        for (int selection = 0; selection < PiecePolicy.SELECTIONS; selection++) {
+            full |= (long) policy.getWeight(selection) << (selection * BAG_BITS);
+        }
+        fullBag = full;
+        rand = new SeededRandom(seed);
+        queue = new int[previewSize];
+        randAfter = new long[previewSize];
+        bagAfter = new long[previewSize];
+        reseed(seed);
+    }
+
+    public PiecePolicy getPolicy() {
+        return policy;
+    }
+
+    public int getPreviewSize() {
+        return queue.length;
+    }
+
+    /**
+     * reseed: Starts the sequence again from a new seed, with a new bag
+     * @param seed decides which blocks come up
+     */
+    public void reseed(long seed) {
+        rand.setSeed(seed);
+        setState(rand.getState(), 0);
+    }
+
+    /**
+     * next: Takes the next block and draws another onto the end of the queue
+     * @return the block, see selectionOf, xOf and zOf
+     */
+    public int next() {
+        int piece = queue[head];
+        headRand = randAfter[head];
+        headBag = bagAfter[head];
+        draw(head);
+        head = (head + 1) % queue.length;
+        return piece;
+    }
+
+    /**
+     * peek: A block that's coming up
+     * @param ahead 0 for the block next() will give, 1 for the one after, up to getPreviewSize() - 1
+     * @return the block
+     */
+    public int peek(int ahead) {
+        return queue[(head + ahead) % queue.length];
+    }
+
+    /**
+     * getRandState: the random state before the next block was drawn. With getBagState it's all that's needed to get the
+     * same blocks again, the queue is drawn again from it
+     * @return the 48 bit random state
+     */
+    public long getRandState() {
+        return headRand;
+    }
+
+    /**
+     * getBagState: what was left in the bag before the next block was drawn
+     * @return 5 bits per selection, 0 when the bag is empty
+     */
+    public long getBagState() {
+        return headBag;
+    }
+
+    /**
+     * setState: Puts the generator back to a state from getRandState and getBagState, and draws the queue again
+     * @param randState the random state
+     * @param bagState the bag
+     */
+    public void setState(long randState, long bagState) {
+        rand.setState(randState);
+        headRand = rand.getState();
+        headBag = bagState;
+        bag = bagState;
+        head = 0;
+        for (int i = 0; i < queue.length; i++) {
+            draw(i);
+        }
+    }
+
+    /**
+     * copyFrom: Makes this generator an exact copy of another one with the same board, policy and preview size. Doesn't
+     * allocate
+     * @param other the generator to copy
+     */
+    public void copyFrom(PieceGenerator other) {
+        System.arraycopy(other.queue, 0, queue, 0, queue.length);
+        System.arraycopy(other.randAfter, 0, randAfter, 0, queue.length);
+        System.arraycopy(other.bagAfter, 0, bagAfter, 0, queue.length);
+        rand.setState(other.rand.getState());
+        head = other.head;
+        headRand = other.headRand;
+        headBag = other.headBag;
+        bag = other.bag;
+    }
+
+    /**
+     * splitSeed: Works out a seed for another generator, for handing out to other threads. It doesn't touch the blocks
+     * this generator gives, and the seeds are scrambled so the new sequences don't line up with this one or each other
+     * @param stream a different number for each generator split off, like the thread's index
+     * @return the seed
+     */
+    public long splitSeed(long stream) {
+        return mix(headRand ^ mix(stream + 0x9E3779B97F4A7C15L));
+    }
+
+    // SplitMix64's finaliser, scrambles every bit into every other bit
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Draws a block into a slot of the queue, carrying on from the last block drawn
+    private void draw(int slot) {
+        int selection = drawSelection();
+        int x = rand.nextInt(width);
+        int z = rand.nextInt(depth);
+        if (selection == 1 || selection == 2) {
+            x = rand.nextInt(width - 1);
+        } else if (selection == 3 || selection == 4) {
+            z = rand.nextInt(depth - 1);
+        } else if (selection >= 7) {
+            z = rand.nextInt(depth - 1);    // z first, that's the order Game drew them in
+            x = rand.nextInt(width - 1);
+        }
+        queue[slot] = selection | (x << 8) | (z << 16);
+        randAfter[slot] = rand.getState();
+        bagAfter[slot] = bag;
+    }
+
+    private int drawSelection() {
+        if (!policy.isBag()) {
+            int pick = rand.nextInt(policy.getTotalWeight());
+            for (int selection = 0; ; selection++) {
+                pick -= policy.getWeight(selection);
+                if (pick < 0) {
+                    return selection;
+                }
+            }
+        }
+        if (bag == 0) {
+            bag = fullBag;
+        }
+        int left = 0;
+        for (int selection = 0; selection < PiecePolicy.SELECTIONS; selection++) {
+            left += (int) ((bag >>> (selection * BAG_BITS)) & BAG_COUNT_MASK);
+        }
+        int pick = rand.nextInt(left);
+        for (int selection = 0; ; selection++) {
+            pick -= (int) ((bag >>> (selection * BAG_BITS)) & BAG_COUNT_MASK);
+            if (pick < 0) {
+                bag -= 1L << (selection * BAG_BITS);
+                return selection;
+            }
+        }
+    }
+
+    public static int selectionOf(int piece) {
+        return piece & 0xFF;
+    }
+
+    public static int xOf(int piece) {
+        return (piece >>> 8) & 0xFF;
+    }
+
+    public static int zOf(int piece) {
+        return piece >>> 16;
+    }
+
+    /**
+     * isTall: lets us know if a block is two layers high
+     * @return true for the standing up 2x1
+     */
+    public static boolean isTall(int piece) {
+        int selection = selectionOf(piece);
+        return selection == 5 || selection == 6;
+    }
+
+    /**
+     * nameOf: a short name for the HUD
+     * @return cube, bar, tall or L
+     */
+    public static String nameOf(int piece) {
+        return NAMES[selectionOf(piece)];
+    }
+
+    /**
+     * footprint: the cells a block covers, seen from above
+     * @param piece the block
+     * @return one bit per cell like a GameEngine layer, bit (x * depth + z). Tall blocks cover these cells in two layers
+     */
+    public long footprint(int piece) {
+        int selection = selectionOf(piece);
+        int x = xOf(piece);
+        int z = zOf(piece);
+        long cell = 1L << (x * depth + z);
+        if (selection == 1 || selection == 2) {
+            return cell | (cell << depth);
+        }
+        if (selection == 3 || selection == 4) {
+            return cell | (cell << 1);
+        }
+        if (selection >= 7) {
+            // The four L shapes are a 2x2 square with one corner missing
+            int missingX = selection == 7 || selection == 8 ? 1 : 0;
+            int missingZ = selection == 7 || selection == 10 ? 1 : 0;
+            long square = cell | (cell << 1) | (cell << depth) | (cell << (depth + 1));
+            return square & ~(1L << ((x + missingX) * depth + z + missingZ));
+        }
+        return cell;
+    }
+}
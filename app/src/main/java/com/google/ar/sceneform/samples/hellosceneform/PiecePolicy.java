@@ -0,0 +1,107 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * PIECE POLICY
+ * How likely each block is to come up, see PieceGenerator. There are 11 selections, numbered the
+ * way Game has always numbered them:
+ *   0      single 1x1
+ *   1, 2   2x1 lying along x
+ *   3, 4   2x1 lying along z
+ *   5, 6   2x1 standing up
+ *   7-10   the four L shapes
+ * Each selection gets a weight. Without a bag a selection is drawn with chance weight / total, so
+ * CLASSIC (every weight 1) gives exactly the blocks the game always gave. With a bag, each
+ * selection comes up exactly weight times in every run of total blocks, in a random order, so
+ * there are no long droughts of the block you're waiting for.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class PiecePolicy {
+
+    public static final int SELECTIONS = 11;
+    public static final int MAX_WEIGHT = 31;   // a bag keeps its counts in 5 bits each
+
+    public static final PiecePolicy CLASSIC = new PiecePolicy(false, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1);
+    public static final PiecePolicy BAG = new PiecePolicy(true, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1);
+
+    private final boolean isBag;
+    private final int[] weights;
+    private final int totalWeight;
+
+    /**
+     * PiecePolicy: Makes a policy
+     * @param bag true to deal the blocks out of a bag, false to draw each one on its own
+     * @param weights a weight between 0 and MAX_WEIGHT for each of the SELECTIONS, at least one of them above 0
+     */
+    public PiecePolicy(boolean bag, int... weights) {
+        if (weights.length != SELECTIONS) {
+            throw new IllegalArgumentException("Need " + SELECTIONS + " weights, not " + weights.length);
+        }
+        int total = 0;
+        for (int weight : weights) {
+            if (weight < 0 || weight > MAX_WEIGHT) {
+                throw new IllegalArgumentException("Weights go from 0 to " + MAX_WEIGHT + ", not " + weight);
+            }
+            total += weight;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("At least one block needs a weight");
+        }
+        isBag = bag;
+        this.weights = weights.clone();
+        totalWeight = total;
+    }
+
+    public boolean isBag() {
+        return isBag;
+    }
+
+    public int getWeight(int selection) {
+        return weights[selection];
+    }
+
+    public int getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * write: Packs the policy, for recordings that need to play the same blocks again
+     * @param buffer where to write the bag flag and then a byte per weight
+     */
+    public void write(ByteBuffer buffer) {
+        buffer.put((byte) (isBag ? 1 : 0));
+        for (int weight : weights) {
+            buffer.put((byte) weight);
+        }
+    }
+
+    /**
+     * read: Unpacks a policy from write
+     * @param buffer where to read it from
+     * @return the policy. Throws IllegalArgumentException if the weights don't make sense
+     */
+    public static PiecePolicy read(ByteBuffer buffer) {
+        boolean bag = buffer.get() != 0;
+        int[] weights = new int[SELECTIONS];
+        for (int i = 0; i < SELECTIONS; i++) {
+            weights[i] = buffer.get();
+        }
+        return new PiecePolicy(bag, weights);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PiecePolicy)) {
+            return false;
+        }
+        PiecePolicy other = (PiecePolicy) o;
+        return isBag == other.isBag && Arrays.equals(weights, other.weights);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(weights) * 2 + (isBag ? 1 : 0);
+    }
+}
@@ -0,0 +1,93 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * PLAYER INPUT
+ * Everything a player pressed during one tick, packed into a single long so it can be stored in
+ * plain arrays and sent as one varint. The low 5 bits are how many presses there were, then 3 bits
+ * per press in the order they happened. A tick with no presses is 0, which goes over the network
+ * as one byte.
+ */
+
+public final class PlayerInput {
+
+    public static final long NONE = 0;
+
+    public static final int LEFT = 1;
+    public static final int RIGHT = 2;
+    public static final int FORWARD = 3;
+    public static final int BACKWARD = 4;
+    public static final int DROP = 5;       // tapping the board, the block drops a layer straight away
+
+    public static final int MAX_PRESSES = 19;   // 5 + 19 * 3 = 62 bits. Nobody presses 19 buttons in a tenth of a second
+
+    private static final int COUNT_BITS = 5;
+    private static final int COMMAND_BITS = 3;
+
+    private PlayerInput() {
+    }
+
+    /**
+     * add: Adds a press to a tick's input
+     * @param input the input so far
+     * @param command one of LEFT, RIGHT, FORWARD, BACKWARD or DROP
+     * @return the new input. Presses past MAX_PRESSES are dropped
+     */
+    public static long add(long input, int command) {
+        int count = count(input);
+        if (count >= MAX_PRESSES) {
+            return input;
+        }
+        long withCommand = input | ((long) command << (COUNT_BITS + count * COMMAND_BITS));
+        return (withCommand & ~((1L << COUNT_BITS) - 1)) | (count + 1);
+    }
+
+    /**
+     * count: how many presses are in an input
+     */
+    public static int count(long input) {
+        return (int) (input & ((1L << COUNT_BITS) - 1));
+    }
+
+    /**
+     * command: one of the presses in an input
+     * @param index 0 for the first press
+     * @return LEFT, RIGHT, FORWARD, BACKWARD or DROP
+     */
+    public static int command(long input, int index) {
+        return (int) ((input >>> (COUNT_BITS + index * COMMAND_BITS)) & ((1 << COMMAND_BITS) - 1));
+    }
+
+    /**
+     * apply: Does each press to an engine, in order
+     * @param input the presses
+     * @param engine the player's board
+     * @return layers cleared by DROP presses
+     */
+    public static int apply(long input, GameEngine engine) {
+        int cleared = 0;
+        int count = count(input);
+        for (int i = 0; i < count; i++) {
+            switch (command(input, i)) {
+                case LEFT:
+                    engine.moveLeft();
+                    break;
+                case RIGHT:
+                    engine.moveRight();
+                    break;
+                case FORWARD:
+                    engine.moveForward();
+                    break;
+                case BACKWARD:
+                    engine.moveBackward();
+                    break;
+                case DROP:
+                    engine.tick();
+                    cleared += engine.getLastClearedLayers();
+                    break;
+                default:
+                    break;
+            }
+        }
+        return cleared;
+    }
+}
@@ -0,0 +1,109 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * REPLAY
+ * Everything needed to play a game again exactly: the board size, the seed, the piece policy,
+ * and what the player pressed before each tick. A hash of the game is kept every few ticks as
+ * well, so when a replay doesn't play back the same (because it was tampered with, or the rules
+ * changed) ReplayVerifier can say which tick it went wrong at. ReplayRecorder makes these while
+ * a game is played.
+ *
+ * Layout (big endian):
+ *   byte    version
+ *   byte[3] width, height and depth of the board
+ *   long    seed
+ *   bytes   the piece policy, see PiecePolicy.write
+ *   varint  number of ticks
+ *   varints what was pressed before each tick, see PlayerInput
+ *   varint  ticks between checkpoints
+ *   int     checkpoint hash, the low 32 bits of GameEngine.stateHash(), for every checkpoint
+ *   varint  final score
+ *   long    hash of the final game
+ */
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+public class Replay {
+
+    private static final byte VERSION = 2;  // 1 had no piece policy
+
+    public int width = GameEngine.DEFAULT_WIDTH;
+    public int height = GameEngine.DEFAULT_HEIGHT;
+    public int depth = GameEngine.DEFAULT_DEPTH;
+    public long seed;
+    public PiecePolicy policy = PiecePolicy.CLASSIC;
+    public long[] inputs;           // inputs[t] is what was pressed before tick t
+    public int checkpointInterval;
+    public int[] checkpoints;       // checkpoints[i] is the hash after tick (i + 1) * checkpointInterval - 1
+    public int finalScore;
+    public long finalHash;
+
+    /**
+     * toBytes: Packs the replay
+     * @return the packed replay
+     */
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 3 + 8 + 1 + PiecePolicy.SELECTIONS + 5 + inputs.length * 10 + 5 + checkpoints.length * 4 + 5 + 8);
+        buffer.put(VERSION);
+        buffer.put((byte) width);
+        buffer.put((byte) height);
+        buffer.put((byte) depth);
+        buffer.putLong(seed);
+        policy.write(buffer);
+        VarInt.write(inputs.length, buffer);
+        for (long input : inputs) {
+            VarInt.write(input, buffer);
+        }
+        VarInt.write(checkpointInterval, buffer);
+        for (int checkpoint : checkpoints) {
+            buffer.putInt(checkpoint);
+        }
+        VarInt.write(finalScore, buffer);
+        buffer.putLong(finalHash);
+        byte[] bytes = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * fromBytes: Unpacks a replay made by toBytes
+     * @param bytes the packed replay
+     * @return the replay, or null if the bytes aren't a replay we understand
+     */
+    public static Replay fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            if (buffer.get() != VERSION) {
+                return null;
+            }
+            Replay replay = new Replay();
+            replay.width = buffer.get();
+            replay.height = buffer.get();
+            replay.depth = buffer.get();
+            replay.seed = buffer.getLong();
+            replay.policy = PiecePolicy.read(buffer);
+            int ticks = (int) VarInt.read(buffer);
+            if (ticks < 0 || ticks > buffer.remaining()) {
+                return null;    // every tick is at least a byte
+            }
+            replay.inputs = new long[ticks];
+            for (int t = 0; t < ticks; t++) {
+                replay.inputs[t] = VarInt.read(buffer);
+            }
+            replay.checkpointInterval = (int) VarInt.read(buffer);
+            if (replay.checkpointInterval <= 0) {
+                return null;
+            }
+            replay.checkpoints = new int[ticks / replay.checkpointInterval];
+            for (int i = 0; i < replay.checkpoints.length; i++) {
+                replay.checkpoints[i] = buffer.getInt();
+            }
+            replay.finalScore = (int) VarInt.read(buffer);
+            replay.finalHash = buffer.getLong();
+            return buffer.hasRemaining() ? null : replay;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * REPLAY RECORDER
+ * Writes down a game while it's played so it can be checked later, see Replay and ReplayVerifier.
+ * Game tells it about every press and every tick. The arrays grow by doubling, so a tick doesn't
+ * allocate except now and then when they fill up.
+ */
+
+import java.util.Arrays;
+
+public class ReplayRecorder {
+
+    public static final int CHECKPOINT_INTERVAL = 1;    // a hash every tick, so a bad replay is caught at the exact tick
+
+    private boolean isRecording = false;
+    private int width;
+    private int height;
+    private int depth;
+    private long seed;
+    private PiecePolicy policy;
+    private long currentInput = PlayerInput.NONE;
+    private long[] inputs = new long[256];
+    private int[] checkpoints = new int[256];
+    private int ticks = 0;
+    private int checkpointCount = 0;
+
+    /**
+     * begin: Starts recording a game. Call it straight after GameEngine.start(seed)
+     * @param engine the game
+     * @param gameSeed the seed the game was started with
+     */
+    public void begin(GameEngine engine, long gameSeed) {
+        isRecording = true;
+        width = engine.getWidth();
+        height = engine.getHeight();
+        depth = engine.getDepth();
+        seed = gameSeed;
+        policy = engine.getPiecePolicy();
+        currentInput = PlayerInput.NONE;
+        ticks = 0;
+        checkpointCount = 0;
+    }
+
+    /**
+     * cancel: Stops recording without making a replay, for when the game was changed in a way we can't replay, like being
+     * loaded from a save
+     */
+    public void cancel() {
+        isRecording = false;
+    }
+
+    public boolean isRecording() {
+        return isRecording;
+    }
+
+    /**
+     * press: Notes a button press. It belongs to the next tick
+     * @param command one of the PlayerInput commands
+     */
+    public void press(int command) {
+        if (isRecording) {
+            currentInput = PlayerInput.add(currentInput, command);
+        }
+    }
+
+    /**
+     * tick: Notes that the game ticked. Call it after GameEngine.tick
+     * @param engine the game
+     */
+    public void tick(GameEngine engine) {
+        if (!isRecording) {
+            return;
+        }
+        if (ticks == inputs.length) {
+            inputs = Arrays.copyOf(inputs, ticks * 2);
+        }
+        inputs[ticks++] = currentInput;
+        currentInput = PlayerInput.NONE;
+        if (ticks % CHECKPOINT_INTERVAL == 0) {
+            if (checkpointCount == checkpoints.length) {
+                checkpoints = Arrays.copyOf(checkpoints, checkpointCount * 2);
+            }
+            checkpoints[checkpointCount++] = (int) engine.stateHash();
+        }
+    }
+
+    /**
+     * finish: Stops recording and makes the replay
+     * @param engine the game, once it's over
+     * @return the replay, or null if we weren't recording
+     */
+    public Replay finish(GameEngine engine) {
+        if (!isRecording) {
+            return null;
+        }
+        isRecording = false;
+        Replay replay = new Replay();
+        replay.width = width;
+        replay.height = height;
+        replay.depth = depth;
+        replay.seed = seed;
+        replay.policy = policy;
+        replay.inputs = Arrays.copyOf(inputs, ticks);
+        replay.checkpointInterval = CHECKPOINT_INTERVAL;
+        replay.checkpoints = Arrays.copyOf(checkpoints, checkpointCount);
+        replay.finalScore = engine.getScore();
+        replay.finalHash = engine.stateHash();
+        return replay;
+    }
+}
@@ -0,0 +1,150 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * REPLAY VERIFIER
+ * Checks submitted scores by playing their replays again with GameEngine. A replay is good when
+ * every checkpoint, the final score and the final game all come out the same. A bad one is
+ * reported with the first tick that came out different.
+ *
+ * Big batches are spread over a fixed pool of threads. The queue in front of them is bounded, and
+ * once it's full the thread handing out replays verifies one itself, so a batch read from disk
+ * never has to sit in memory all at once.
+ */
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ReplayVerifier implements Closeable {
+
+    public static final int VALID = -1;
+    public static final int UNREADABLE = -2;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * ReplayVerifier: Starts the verifier's threads
+     * @param threads how many replays to play at once, usually the number of cores
+     * @param queueSize how many replays can wait for a thread
+     */
+    public ReplayVerifier(int threads, int queueSize) {
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Result: what happened to one replay that didn't check out
+     */
+    public static class Result {
+        public final int index;             // where it was in the batch
+        public final int divergedAtTick;    // the first tick that came out different, or UNREADABLE
+
+        Result(int index, int divergedAtTick) {
+            this.index = index;
+            this.divergedAtTick = divergedAtTick;
+        }
+    }
+
+    /**
+     * Report: how a batch went
+     */
+    public static class Report {
+        public long valid;
+        public long invalid;
+        public long elapsedNanos;
+        public List<Result> failures;       // in batch order
+
+        public double replaysPerSecond() {
+            return elapsedNanos == 0 ? 0 : (valid + invalid) * 1e9 / elapsedNanos;
+        }
+    }
+
+    /**
+     * findDivergence: Plays a replay again
+     * @param replay the replay
+     * @return VALID if it all came out the same, otherwise the first tick that didn't. A replay that only goes wrong
+     * in its final score or hash diverges at the tick after its last one
+     */
+    public static int findDivergence(Replay replay) {
+        GameEngine engine;
+        try {
+            engine = new GameEngine(replay.width, replay.height, replay.depth, replay.seed, replay.policy, 1);
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+        engine.start(replay.seed);
+        int ticks = replay.inputs.length;
+        for (int t = 0; t < ticks; t++) {
+            if (!engine.isStarted()) {
+                return t;   // the game was already over, so there shouldn't be any more ticks
+            }
+            PlayerInput.apply(replay.inputs[t], engine);
+            engine.tick();
+            if ((t + 1) % replay.checkpointInterval == 0) {
+                int checkpoint = (t + 1) / replay.checkpointInterval - 1;
+                if (replay.checkpoints[checkpoint] != (int) engine.stateHash()) {
+                    // The checkpoint can be a few ticks after things went wrong. Every tick is checked when the interval is 1
+                    return t;
+                }
+            }
+        }
+        if (engine.getScore() != replay.finalScore || engine.stateHash() != replay.finalHash) {
+            return ticks;
+        }
+        return VALID;
+    }
+
+    /**
+     * verifyAll: Checks a batch of replays. Returns once they've all been checked
+     * @param replays packed replays, see Replay.toBytes. Only read from this thread
+     * @return how it went
+     */
+    public Report verifyAll(Iterator<byte[]> replays) {
+        long start = System.nanoTime();
+        AtomicLong valid = new AtomicLong();
+        AtomicLong invalid = new AtomicLong();
+        List<Result> failures = Collections.synchronizedList(new ArrayList<>());
+        Phaser running = new Phaser(1);
+        int index = 0;
+        while (replays.hasNext()) {
+            byte[] bytes = replays.next();
+            int replayIndex = index++;
+            running.register();
+            executor.execute(() -> {
+                try {
+                    Replay replay = Replay.fromBytes(bytes);
+                    int diverged = replay == null ? UNREADABLE : findDivergence(replay);
+                    if (diverged == VALID) {
+                        valid.incrementAndGet();
+                    } else {
+                        invalid.incrementAndGet();
+                        failures.add(new Result(replayIndex, diverged));
+                    }
+                } finally {
+                    running.arriveAndDeregister();
+                }
+            });
+        }
+        running.arriveAndAwaitAdvance();
+
+        Report report = new Report();
+        report.valid = valid.get();
+        report.invalid = invalid.get();
+        report.elapsedNanos = System.nanoTime() - start;
+        report.failures = new ArrayList<>(failures);
+        Collections.sort(report.failures, (a, b) -> Integer.compare(a.index, b.index));
+        return report;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,56 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * SEEDED RANDOM
+ * A java.util.Random that lets us read and write its internal state, so a saved game carries on
+ * with exactly the same blocks it would have got if it had never been interrupted.
+ * It uses the same generator as java.util.Random, so the numbers for a given seed are identical.
+ */
+
+import java.util.Random;
+
+public class SeededRandom extends Random {
+
+    private static final long serialVersionUID = 1L;   // Random is Serializable. We never serialise one, saves use getState
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private long state;     // no initialiser on purpose. Random's constructor calls setSeed before field initialisers run
+
+    public SeededRandom() {
+        super();
+    }
+
+    public SeededRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        super.setSeed(seed);
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    /**
+     * getState: the generator's internal state, for saving
+     * @return the 48 bit state
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * setState: puts the generator back to a state from getState
+     * @param state the 48 bit state
+     */
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+}
@@ -0,0 +1,380 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * SPARSE BOARD
+ * Board storage for very tall or very wide boards, like a tower mode with thousands of layers.
+ * The board is split into 4x4x4 chunks and each chunk is packed into one long, one bit per cell.
+ * A chunk only exists while at least one of its cells is filled, so memory goes with how many
+ * blocks have landed rather than with the size of the board.
+ *
+ * Inside a chunk, bit (x + z*4 + y*16) is the cell at (x, y, z) relative to the chunk's corner.
+ * That puts each layer of a chunk in 16 neighbouring bits, so checking or removing a whole layer
+ * is a mask and a shift.
+ *
+ * Chunks live in an open addressing hash table of longs, so nothing is boxed and looking up a
+ * chunk doesn't allocate.
+ *
+ * Nothing plays on this yet. GameEngine packs each layer into one long, which covers every board
+ * the game offers today (up to 64 cells a layer). This is a standalone building block for a
+ * tower or arena mode, tested on its own in SparseBoardTest, and an engine for that mode would
+ * sit on top of it.
+ */
+
+import java.util.Arrays;
+
+public class SparseBoard {
+
+    public static final int CHUNK_SIZE = 4;
+    private static final int CHUNK_SHIFT = 2;
+    private static final int LAYER_BITS = CHUNK_SIZE * CHUNK_SIZE;
+    private static final long LAYER_MASK = 0xFFFFL;
+    private static final long EMPTY_KEY = -1L;
+    private static final int MIN_CAPACITY = 16;
+
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final int chunksX;
+    private final int chunksY;
+    private final int chunksZ;
+
+    private long[] keys;
+    private long[] chunks;
+    private int count;
+    private int topChunkY = -1;     // no chunk is above this row. It can be too high, never too low
+
+    /**
+     * SparseBoard: Creates an empty board
+     * @param width cells along x
+     * @param height cells along y, including any room above the play area for new blocks
+     * @param depth cells along z
+     */
+    public SparseBoard(int width, int height, int depth) {
+        if (width <= 0 || height <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("Board size must be positive, was " + width + "x" + height + "x" + depth);
+        }
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        chunksX = (width + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+        chunksY = (height + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+        chunksZ = (depth + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+        keys = new long[MIN_CAPACITY];
+        chunks = new long[MIN_CAPACITY];
+        Arrays.fill(keys, EMPTY_KEY);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * get: lets us know if a cell is filled
+     * @return true if there's a block in the cell. Cells outside the board are empty
+     */
+    public boolean get(int x, int y, int z) {
+        if (!inBounds(x, y, z)) {
+            return false;
+        }
+        long chunk = chunk(chunkKey(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT, z >> CHUNK_SHIFT));
+        return (chunk & bit(x, y, z)) != 0;
+    }
+
+    /**
+     * set: fills or empties a cell, creating its chunk or freeing it as needed
+     */
+    public void set(int x, int y, int z, boolean filled) {
+        checkBounds(x, y, z);
+        long key = chunkKey(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT, z >> CHUNK_SHIFT);
+        long chunk = chunk(key);
+        putChunk(key, filled ? chunk | bit(x, y, z) : chunk & ~bit(x, y, z));
+    }
+
+    /**
+     * collides: lets us know if any of the cells are already filled. Only the chunks the cells are in get looked at
+     * @param xs x of each cell
+     * @param ys y of each cell
+     * @param zs z of each cell
+     * @param cellCount how many cells to check
+     * @return true if any of the cells is filled or outside the board
+     */
+    public boolean collides(int[] xs, int[] ys, int[] zs, int cellCount) {
+        for (int i = 0; i < cellCount; i++) {
+            if (!inBounds(xs[i], ys[i], zs[i]) || get(xs[i], ys[i], zs[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * place: fills every cell of a block that has landed
+     */
+    public void place(int[] xs, int[] ys, int[] zs, int cellCount) {
+        for (int i = 0; i < cellCount; i++) {
+            set(xs[i], ys[i], zs[i], true);
+        }
+    }
+
+    /**
+     * isLayerFull: lets us know if every cell in a layer is filled. Stops at the first chunk that's missing or has a gap
+     * @param y the layer
+     * @return true if the layer is full
+     */
+    public boolean isLayerFull(int y) {
+        if (y < 0 || y >= height) {
+            return false;
+        }
+        int cy = y >> CHUNK_SHIFT;
+        int shift = (y & (CHUNK_SIZE - 1)) * LAYER_BITS;
+        for (int cx = 0; cx < chunksX; cx++) {
+            for (int cz = 0; cz < chunksZ; cz++) {
+                long wanted = layerMask(cx, cz);
+                long layer = (chunk(chunkKey(cx, cy, cz)) >>> shift) & LAYER_MASK;
+                if ((layer & wanted) != wanted) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * clearFullLayers: Removes every full layer between two heights and drops everything above each one down.
+     * A landed block can only fill the layers it's in, so pass its lowest and highest y and nothing else is checked
+     * @param fromY lowest layer to check
+     * @param toY highest layer to check
+     * @return how many layers were removed
+     */
+    public int clearFullLayers(int fromY, int toY) {
+        int cleared = 0;
+        // Going from the top down means a removed layer never moves one we still have to check
+        for (int y = Math.min(toY, height - 1); y >= Math.max(fromY, 0); y--) {
+            if (isLayerFull(y)) {
+                removeLayer(y);
+                cleared++;
+            }
+        }
+        return cleared;
+    }
+
+    /**
+     * removeLayer: Deletes a layer and moves everything above it down one. Only chunk rows from the layer up to the
+     * highest block are touched, and nothing is allocated
+     * @param y the layer to remove
+     */
+    public void removeLayer(int y) {
+        checkBounds(0, y, 0);
+        int cy = y >> CHUNK_SHIFT;
+        int ly = y & (CHUNK_SIZE - 1);
+        long keepBelow = (1L << (ly * LAYER_BITS)) - 1;
+
+        // Work upwards, so each chunk is rewritten from its own old value and the bottom layer of the chunk above,
+        // which hasn't been rewritten yet
+        for (int row = cy; row <= topChunkY; row++) {
+            for (int cx = 0; cx < chunksX; cx++) {
+                for (int cz = 0; cz < chunksZ; cz++) {
+                    long key = chunkKey(cx, row, cz);
+                    long chunk = chunk(key);
+                    long fromAbove = chunk(chunkKey(cx, row + 1, cz)) & LAYER_MASK;
+                    if (chunk == 0 && fromAbove == 0) {
+                        continue;
+                    }
+                    long moved = row == cy
+                        ? (chunk & keepBelow) | ((chunk >>> LAYER_BITS) & ~keepBelow)   // keep what's under the layer, drop the rest onto it
+                        : chunk >>> LAYER_BITS;
+                    putChunk(key, moved | (fromAbove << ((CHUNK_SIZE - 1) * LAYER_BITS)));
+                }
+            }
+        }
+        while (topChunkY >= 0 && isRowEmpty(topChunkY)) {
+            topChunkY--;
+        }
+    }
+
+    private boolean isRowEmpty(int cy) {
+        for (int cx = 0; cx < chunksX; cx++) {
+            for (int cz = 0; cz < chunksZ; cz++) {
+                if (chunk(chunkKey(cx, cy, cz)) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * anyFilledFrom: lets us know if there is any block at or above a layer. Used to check if a player has stacked too high
+     * @param y the lowest layer to look at
+     * @return true if any cell at or above y is filled
+     */
+    public boolean anyFilledFrom(int y) {
+        int cy = Math.max(y, 0) >> CHUNK_SHIFT;
+        long mask = y <= 0 ? -1L : -1L << ((y & (CHUNK_SIZE - 1)) * LAYER_BITS);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == EMPTY_KEY) {
+                continue;
+            }
+            int chunkY = chunkY(keys[i]);
+            if (chunkY > cy || (chunkY == cy && (chunks[i] & mask) != 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * clear: empties the whole board and frees every chunk
+     */
+    public void clear() {
+        keys = new long[MIN_CAPACITY];
+        chunks = new long[MIN_CAPACITY];
+        Arrays.fill(keys, EMPTY_KEY);
+        count = 0;
+        topChunkY = -1;
+    }
+
+    /**
+     * chunkCount: how many chunks are allocated right now
+     * @return the number of chunks with at least one filled cell
+     */
+    public int chunkCount() {
+        return count;
+    }
+
+    // ----- chunk helpers -----
+
+    private boolean inBounds(int x, int y, int z) {
+        return x >= 0 && x < width && y >= 0 && y < height && z >= 0 && z < depth;
+    }
+
+    private void checkBounds(int x, int y, int z) {
+        if (!inBounds(x, y, z)) {
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ", " + z + ") is outside a " + width + "x" + height + "x" + depth + " board");
+        }
+    }
+
+    private static long bit(int x, int y, int z) {
+        int lx = x & (CHUNK_SIZE - 1);
+        int ly = y & (CHUNK_SIZE - 1);
+        int lz = z & (CHUNK_SIZE - 1);
+        return 1L << (lx + lz * CHUNK_SIZE + ly * LAYER_BITS);
+    }
+
+    // The cells of one chunk layer that are inside the board. Chunks on the far edges can hang over it
+    private long layerMask(int cx, int cz) {
+        int cellsX = Math.min(CHUNK_SIZE, width - cx * CHUNK_SIZE);
+        int cellsZ = Math.min(CHUNK_SIZE, depth - cz * CHUNK_SIZE);
+        long row = (1L << cellsX) - 1;
+        long mask = 0;
+        for (int lz = 0; lz < cellsZ; lz++) {
+            mask |= row << (lz * CHUNK_SIZE);
+        }
+        return mask;
+    }
+
+    private long chunkKey(int cx, int cy, int cz) {
+        return ((long) cy * chunksZ + cz) * chunksX + cx;
+    }
+
+    private int chunkY(long key) {
+        return (int) (key / ((long) chunksX * chunksZ));
+    }
+
+    // ----- hash table -----
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != EMPTY_KEY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private long chunk(long key) {
+        if (key < 0 || key >= (long) chunksX * chunksY * chunksZ) {
+            return 0;
+        }
+        int i = slot(key);
+        return keys[i] == key ? chunks[i] : 0;
+    }
+
+    private void putChunk(long key, long value) {
+        int i = slot(key);
+        if (value == 0) {
+            if (keys[i] == key) {
+                removeSlot(i);
+            }
+            return;
+        }
+        if (keys[i] != key) {
+            keys[i] = key;
+            count++;
+            topChunkY = Math.max(topChunkY, chunkY(key));
+            chunks[i] = value;
+            if (count * 4 > keys.length * 3) {
+                resize(keys.length * 2);
+            }
+            return;
+        }
+        chunks[i] = value;
+    }
+
+    // Backward shift deletion, so lookups never need tombstones
+    private void removeSlot(int i) {
+        int mask = keys.length - 1;
+        keys[i] = EMPTY_KEY;
+        chunks[i] = 0;
+        count--;
+        int j = (i + 1) & mask;
+        while (keys[j] != EMPTY_KEY) {
+            int home = hash(keys[j]) & mask;
+            // Move j back into the hole if its home slot isn't between the hole and j
+            boolean between = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!between) {
+                keys[i] = keys[j];
+                chunks[i] = chunks[j];
+                keys[j] = EMPTY_KEY;
+                chunks[j] = 0;
+                i = j;
+            }
+            j = (j + 1) & mask;
+        }
+        if (keys.length > MIN_CAPACITY && count * 8 < keys.length) {
+            resize(keys.length / 2);
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldChunks = chunks;
+        keys = new long[capacity];
+        chunks = new long[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                int j = hash(oldKeys[i]) & mask;
+                while (keys[j] != EMPTY_KEY) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                chunks[j] = oldChunks[i];
+            }
+        }
+    }
+}
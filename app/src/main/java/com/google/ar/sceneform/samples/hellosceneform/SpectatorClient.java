@@ -0,0 +1,155 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * SPECTATOR CLIENT
+ * Rebuilds a board from a SpectatorEncoder stream, from a socket or a recorded file. It doesn't draw
+ * anything, so it can be used to check a stream is right and to see how many bytes it costs.
+ * Frames before the first keyframe are skipped, because there's nothing to apply them to yet.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+public class SpectatorClient {
+
+    private long[] layers;
+    private int width;
+    private int height;
+    private int depth;
+    private int score;
+    private boolean isOver;
+    private int frame = -1;
+    private boolean synced = false;
+
+    private long framesRead = 0;
+    private long framesApplied = 0;
+    private long keyframes = 0;
+    private long bytesRead = 0;
+
+    /**
+     * readAll: Reads frames until the stream ends
+     * @param in a socket's or file's stream
+     */
+    public void readAll(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        byte[] body = new byte[256];
+        while (true) {
+            int length;
+            try {
+                length = (int) VarInt.read(data);
+            } catch (EOFException e) {
+                return;
+            }
+            if (length > body.length) {
+                body = new byte[Math.max(length, body.length * 2)];
+            }
+            data.readFully(body, 0, length);
+            bytesRead += VarInt.size(length) + length;
+            applyFrame(ByteBuffer.wrap(body, 0, length));
+        }
+    }
+
+    /**
+     * applyFrame: Applies one frame, without the length in front
+     * @param frameBody the frame
+     * @return true if the frame changed our board, false if we're waiting for a keyframe
+     */
+    public boolean applyFrame(ByteBuffer frameBody) {
+        framesRead++;
+        int flags = frameBody.get();
+        int number = frameBody.get() & 0xFF;
+        boolean keyframe = (flags & SpectatorEncoder.FLAG_KEYFRAME) != 0;
+        if (keyframe) {
+            int newWidth = frameBody.get();
+            int newHeight = frameBody.get();
+            int newDepth = frameBody.get();
+            if (layers == null || newWidth != width || newHeight != height || newDepth != depth) {
+                width = newWidth;
+                height = newHeight;
+                depth = newDepth;
+                layers = new long[height];
+            }
+            for (int y = 0; y < height; y++) {
+                layers[y] = 0;
+            }
+            synced = true;
+            keyframes++;
+        } else if (!synced || number != ((frame + 1) & 0xFF)) {
+            synced = false;     // joined part way through, or missed a frame. Wait for the next keyframe
+            return false;
+        }
+        frame = number;
+        if ((flags & SpectatorEncoder.FLAG_SCORE) != 0) {
+            score = (int) VarInt.read(frameBody);
+        }
+        isOver = (flags & SpectatorEncoder.FLAG_OVER) != 0;
+
+        int cellsPerLayer = width * depth;
+        int runs = (int) VarInt.read(frameBody);
+        int position = 0;
+        for (int i = 0; i < runs; i++) {
+            position += (int) VarInt.read(frameBody);
+            int length = (int) VarInt.read(frameBody);
+            for (int end = position + length; position < end; position++) {
+                layers[position / cellsPerLayer] ^= 1L << (position % cellsPerLayer);
+            }
+        }
+        framesApplied++;
+        return true;
+    }
+
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * getLayer: the cells that are filled in one layer
+     * @return one bit per cell, bit (x * depth + z), the same as GameEngine
+     */
+    public long getLayer(int y) {
+        return layers[y];
+    }
+
+    public boolean isFilled(int x, int y, int z) {
+        return (layers[y] & (1L << (x * depth + z))) != 0;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public boolean isOver() {
+        return isOver;
+    }
+
+    public long getFramesRead() {
+        return framesRead;
+    }
+
+    public long getFramesApplied() {
+        return framesApplied;
+    }
+
+    public long getKeyframes() {
+        return keyframes;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * bytesPerFrame: the average cost of a frame, keyframes included
+     */
+    public double bytesPerFrame() {
+        return framesRead == 0 ? 0 : (double) bytesRead / framesRead;
+    }
+}
@@ -0,0 +1,157 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * SPECTATOR ENCODER
+ * Turns a game into a stream of small frames for spectators. A frame only holds the cells that
+ * changed since the last frame: each layer is XORed with the layer we sent last time, and the
+ * changed bits are written as run lengths. Every KEYFRAME_INTERVAL frames, and whenever we're asked,
+ * a keyframe holds the whole board instead, so a spectator who joins late (or misses frames)
+ * can catch up.
+ *
+ * Frame layout, with its length in front as a varint (see VarInt):
+ *   byte    flags: FLAG_KEYFRAME, FLAG_SCORE (a score follows), FLAG_OVER (the game is over)
+ *   byte    frame number, wrapping at 256. Enough to notice a missed frame
+ *   bytes   keyframes only: width, renderable height and depth of the board
+ *   varint  score, if FLAG_SCORE is set. Always there in keyframes
+ *   varint  number of runs
+ *   varints for each run, how many cells to skip and then how many cells to flip (or set, in a
+ *           keyframe). Cells are numbered layer by layer from the bottom, bit (x * depth + z) in a layer
+ *
+ * A block falling one layer flips its cells in two layers, which is a few bytes.
+ */
+
+import java.nio.ByteBuffer;
+
+public class SpectatorEncoder {
+
+    public static final int KEYFRAME_INTERVAL = 30;
+
+    public static final int FLAG_KEYFRAME = 1;
+    public static final int FLAG_SCORE = 2;
+    public static final int FLAG_OVER = 4;
+
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final int cellsPerLayer;
+    private final long[] sent;          // what the spectators have, after the last frame
+    private final long[] changes;       // scratch for this frame's diff
+    private final ByteBuffer body;      // scratch for this frame before it gets its length
+    private int frame = 0;
+    private int sentScore = -1;
+    private boolean sentOver = false;
+    private int runCount;               // filled in by writeRuns
+
+    /**
+     * SpectatorEncoder: Creates an encoder for one board
+     * @param engine the board that will be streamed
+     */
+    public SpectatorEncoder(GameEngine engine) {
+        width = engine.getWidth();
+        height = engine.getRenderableHeight();
+        depth = engine.getDepth();
+        cellsPerLayer = width * depth;
+        sent = new long[height];
+        changes = new long[height];
+        body = ByteBuffer.allocate(maxFrameSize());
+    }
+
+    /**
+     * maxFrameSize: the most bytes encode can write for one frame
+     */
+    public int maxFrameSize() {
+        int cells = cellsPerLayer * height;
+        return 5 + 1 + 5 + 3 + 5 + 5 + cells * 5;
+    }
+
+    /**
+     * encode: Writes a frame for the board as it is now. Nothing is written if nothing changed and no keyframe is due
+     * @param engine the board passed to the constructor
+     * @param out where to write the frame, with maxFrameSize() bytes free
+     * @param forceKeyframe true to send the whole board, for a spectator that's just joined
+     * @return true if a frame was written
+     */
+    public boolean encode(GameEngine engine, ByteBuffer out, boolean forceKeyframe) {
+        boolean keyframe = forceKeyframe || frame % KEYFRAME_INTERVAL == 0;
+        boolean changed = false;
+        for (int y = 0; y < height; y++) {
+            long shown = engine.getBoardLayer(y) | engine.getFallingLayer(y);
+            changes[y] = keyframe ? shown : shown ^ sent[y];
+            changed |= shown != sent[y];
+            sent[y] = shown;
+        }
+        int score = engine.getScore();
+        boolean over = !engine.isStarted();
+        boolean scoreChanged = score != sentScore;
+        if (!keyframe && !changed && !scoreChanged && over == sentOver) {
+            return false;
+        }
+
+        int flags = (keyframe ? FLAG_KEYFRAME : 0) | (keyframe || scoreChanged ? FLAG_SCORE : 0) | (over ? FLAG_OVER : 0);
+        body.clear();
+        body.put((byte) flags);
+        body.put((byte) frame);
+        if (keyframe) {
+            body.put((byte) width);
+            body.put((byte) height);
+            body.put((byte) depth);
+        }
+        if ((flags & FLAG_SCORE) != 0) {
+            VarInt.write(score, body);
+        }
+        int countAt = body.position();
+        body.position(countAt + 5);     // leave room for the run count, it's moved down once we know it
+        int runsStart = body.position();
+        writeRuns();
+        int runsLength = body.position() - runsStart;
+        body.position(countAt);
+        VarInt.write(runCount, body);
+        System.arraycopy(body.array(), runsStart, body.array(), body.position(), runsLength);
+        body.position(body.position() + runsLength);
+
+        body.flip();
+        VarInt.write(body.remaining(), out);
+        out.put(body);
+        frame++;
+        sentScore = score;
+        sentOver = over;
+        return true;
+    }
+
+    // Writes (skip, flip) pairs for every run of set bits in changes. A run can carry on from one layer into the next
+    private void writeRuns() {
+        runCount = 0;
+        int position = 0;       // the cell after the end of the last run written
+        int runStart = -1;
+        int runEnd = -1;
+        for (int y = 0; y < height; y++) {
+            long bits = changes[y];
+            int base = y * cellsPerLayer;
+            while (bits != 0) {
+                int start = Long.numberOfTrailingZeros(bits);
+                int length = Long.numberOfTrailingZeros(~(bits >>> start));
+                length = Math.min(length, cellsPerLayer - start);
+                bits &= length == 64 ? 0 : ~(((1L << length) - 1) << start);
+                if (base + start == runEnd) {
+                    runEnd += length;   // joins on to the run from the layer below
+                } else {
+                    if (runStart >= 0) {
+                        position = writeRun(position, runStart, runEnd);
+                    }
+                    runStart = base + start;
+                    runEnd = runStart + length;
+                }
+            }
+        }
+        if (runStart >= 0) {
+            writeRun(position, runStart, runEnd);
+        }
+    }
+
+    private int writeRun(int position, int start, int end) {
+        VarInt.write(start - position, body);
+        VarInt.write(end - start, body);
+        runCount++;
+        return end;
+    }
+}
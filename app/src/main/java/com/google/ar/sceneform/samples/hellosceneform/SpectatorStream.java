@@ -0,0 +1,327 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * SPECTATOR STREAM
+ * Mirrors a game to other screens. Game calls publish whenever its board changes, and the frame
+ * from SpectatorEncoder goes to a file, or to everyone connected to a local socket.
+ *
+ * publish runs in the middle of a frame, so it doesn't write anything or make any garbage. Frames
+ * are encoded into one of POOL_FRAMES buffers made up front, and every output (the file, or each
+ * spectator) has its own queue and its own thread writing it out, so a stalled spectator only
+ * holds up themselves. If an output falls more than QUEUE_FRAMES behind, or every buffer is
+ * still waiting to be written, the frame is dropped and the next one is a keyframe, so everyone
+ * catches up instead of falling further behind. A spectator who stays stuck for STALL_MILLIS is
+ * cut off, a file never is. A spectator who connects part way through gets a keyframe on the next
+ * publish.
+ */
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SpectatorStream implements Closeable {
+    private static final String TAG = SpectatorStream.class.getSimpleName();
+
+    public static final int DEFAULT_PORT = 47475;
+
+    private static final int QUEUE_FRAMES = 64;
+    private static final int POOL_FRAMES = QUEUE_FRAMES * 4;
+    private static final long STALL_MILLIS = 2000;
+    private static final long CLOSE_WAIT_MILLIS = 2000;    // how long close waits on a spectator before cutting them off
+    private static final Frame END_OF_STREAM = new Frame(0);
+
+    // One encoded frame. It goes back in the pool once every output it was queued for has written it
+    private static class Frame {
+        final ByteBuffer buffer;
+        int length;
+        final AtomicInteger users = new AtomicInteger();
+
+        Frame(int size) {
+            buffer = ByteBuffer.allocate(size);
+        }
+    }
+
+    // Somewhere frames go, with its own queue and thread so a slow one can't hold up the others
+    private class Output {
+        final OutputStream out;
+        final Closeable connection;     // closing this makes a stuck write give up
+        final boolean canCutOff;        // spectators can be cut off, a recording can't
+        final BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(QUEUE_FRAMES);
+        final Thread thread;
+        long behindSince = 0;           // System.nanoTime() its queue filled up, 0 while it's keeping up. Only publish uses it
+        volatile boolean isDead = false;    // its thread has finished
+
+        Output(OutputStream out, Closeable connection, boolean canCutOff) {
+            this.out = out;
+            this.connection = connection;
+            this.canCutOff = canCutOff;
+            thread = new Thread(this::writeLoop, "spectator-writer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void writeLoop() {
+            try {
+                while (true) {
+                    Frame frame = queue.take();
+                    if (frame == END_OF_STREAM) {
+                        break;
+                    }
+                    try {
+                        out.write(frame.buffer.array(), 0, frame.length);
+                        if (queue.isEmpty()) {
+                            out.flush();
+                        }
+                    } finally {
+                        release(frame);
+                    }
+                }
+            } catch (IOException e) {
+                // spectator went away, or we cut them off
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            closeQuietly(out);
+            closeQuietly(connection);
+            isDead = true;      // whatever's left in the queue is given back by whoever removes us
+        }
+
+        void cutOff() {
+            closeQuietly(connection);
+        }
+    }
+
+    private final GameEngine engine;
+    private final SpectatorEncoder encoder;
+    private final BlockingQueue<Frame> pool = new ArrayBlockingQueue<>(POOL_FRAMES);
+    private final List<Output> outputs = new ArrayList<>();                     // only touched by publish and close
+    private final List<Output> joined = new CopyOnWriteArrayList<>();           // spectators waiting for their first keyframe
+    private final ServerSocket server;
+    private boolean needKeyframe = false;
+    private volatile boolean isClosed = false;
+
+    private long framesPublished = 0;
+    private long bytesPublished = 0;
+    private long framesDropped = 0;
+
+    private SpectatorStream(GameEngine engine, ServerSocket server) {
+        this.engine = engine;
+        encoder = new SpectatorEncoder(engine);
+        for (int i = 0; i < POOL_FRAMES; i++) {
+            pool.add(new Frame(encoder.maxFrameSize()));
+        }
+        this.server = server;
+    }
+
+    /**
+     * toFile: Records a game to a file, which SpectatorClient can play back later
+     * @param engine the game to record
+     * @param file where to write. It's replaced if it's already there
+     * @return the stream
+     */
+    public static SpectatorStream toFile(GameEngine engine, File file) throws IOException {
+        SpectatorStream stream = new SpectatorStream(engine, null);
+        FileOutputStream out = new FileOutputStream(file);
+        stream.outputs.add(stream.new Output(new BufferedOutputStream(out), out, false));
+        return stream;
+    }
+
+    /**
+     * listen: Streams a game to everyone who connects to a socket
+     * @param engine the game to stream
+     * @param server a socket that's listening. It's closed along with the stream
+     * @return the stream
+     */
+    public static SpectatorStream listen(GameEngine engine, ServerSocket server) {
+        SpectatorStream stream = new SpectatorStream(engine, server);
+        Thread acceptor = new Thread(stream::acceptLoop, "spectator-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return stream;
+    }
+
+    private void acceptLoop() {
+        while (!isClosed) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                joined.add(new Output(new BufferedOutputStream(socket.getOutputStream()), socket, true));
+            } catch (IOException e) {
+                if (!isClosed) {
+                    Log.e(TAG, "Unable to accept spectator", e);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * publish: Sends the board's changes since the last publish. Call it from the thread that changes the game
+     */
+    public void publish() {
+        if (isClosed) {
+            return;
+        }
+        removeDeadOutputs();
+        while (!joined.isEmpty()) {
+            outputs.add(joined.remove(0));
+            needKeyframe = true;
+        }
+        Frame frame = pool.poll();
+        if (frame == null) {
+            needKeyframe = true;    // every buffer is still waiting to be written. Drop this and send the whole board next time
+            framesDropped++;
+            return;
+        }
+        frame.buffer.clear();
+        if (!encoder.encode(engine, frame.buffer, needKeyframe)) {
+            pool.offer(frame);
+            return;     // nothing changed
+        }
+        int length = frame.buffer.position();
+        frame.length = length;
+        needKeyframe = false;
+        boolean isDropped = false;
+        frame.users.set(outputs.size() + 1);   // one extra so it can't go back in the pool until we're done here
+        for (int i = 0; i < outputs.size(); i++) {
+            Output output = outputs.get(i);
+            if (output.queue.offer(frame)) {
+                output.behindSince = 0;
+            } else {
+                release(frame);
+                isDropped = true;
+                fellBehind(output);
+            }
+        }
+        release(frame);
+        if (isDropped) {
+            needKeyframe = true;    // someone can't keep up. They get the whole board next time
+            framesDropped++;
+        } else {
+            framesPublished++;
+            bytesPublished += length;
+        }
+    }
+
+    private void fellBehind(Output output) {
+        long now = System.nanoTime();
+        if (output.behindSince == 0) {
+            output.behindSince = now;
+        } else if (output.canCutOff && now - output.behindSince > TimeUnit.MILLISECONDS.toNanos(STALL_MILLIS)) {
+            output.cutOff();    // their thread finishes, and removeDeadOutputs takes them out
+        }
+    }
+
+    // Takes out outputs whose thread has finished, and gives back the frames they never wrote
+    private void removeDeadOutputs() {
+        for (int i = outputs.size() - 1; i >= 0; i--) {
+            Output output = outputs.get(i);
+            if (output.isDead) {
+                outputs.remove(i);
+                Frame frame;
+                while ((frame = output.queue.poll()) != null) {
+                    release(frame);
+                }
+            }
+        }
+    }
+
+    private void release(Frame frame) {
+        if (frame != END_OF_STREAM && frame.users.decrementAndGet() == 0) {
+            pool.offer(frame);
+        }
+    }
+
+    public long getFramesPublished() {
+        return framesPublished;
+    }
+
+    public long getBytesPublished() {
+        return bytesPublished;
+    }
+
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    /**
+     * close: Stops streaming. Frames already published are still written out first, and if the last one was dropped the
+     * spectators get the whole board so they finish on the right picture. A spectator who doesn't take it within
+     * CLOSE_WAIT_MILLIS is cut off
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        if (server != null) {
+            server.close();
+        }
+        for (Output output : joined) {
+            output.cutOff();
+        }
+        removeDeadOutputs();
+        try {
+            if (needKeyframe) {     // closing can wait for the writers, the game's finished with us
+                Frame last = new Frame(encoder.maxFrameSize());
+                encoder.encode(engine, last.buffer, true);
+                last.length = last.buffer.position();
+                last.users.set(outputs.size());
+                for (Output output : outputs) {
+                    sendBeforeClose(output, last);
+                }
+            }
+            for (Output output : outputs) {
+                sendBeforeClose(output, END_OF_STREAM);
+            }
+            for (Output output : outputs) {
+                output.thread.join(output.canCutOff ? CLOSE_WAIT_MILLIS : 0);
+                if (output.thread.isAlive()) {
+                    output.cutOff();
+                    output.thread.join();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        outputs.clear();
+    }
+
+    // Waits for room in an output's queue. A file gets as long as it needs, unless its thread has given up
+    private void sendBeforeClose(Output output, Frame frame) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_WAIT_MILLIS);
+        while (!output.queue.offer(frame, 10, TimeUnit.MILLISECONDS)) {
+            if (output.isDead) {
+                return;
+            }
+            if (output.canCutOff && System.nanoTime() > deadline) {
+                output.cutOff();
+                return;
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing more we can do
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * TELEMETRY
+ * Writes down how the game is actually played: every block that comes up, every press, every
+ * landing and clear, with the time it happened, so we can work out things like moves per block
+ * and how long blocks take to land.
+ *
+ * Game records events while it ticks, so recording has to cost next to nothing. Events go into a
+ * ring of longs made up front, two per event, and recording one is a few array writes. A
+ * background thread wakes up every flushMillis, takes everything in the ring and writes it to a
+ * gzip file as one batch. If the writer ever falls a whole ring behind, new events are dropped and
+ * counted rather than making the game wait.
+ *
+ * A board's events only make sense from its last START, RESUME or UNDO, because a resumed or
+ * undone block is already part way down with moves nobody wrote down.
+ *
+ * Only one thread may record, the one the game runs on. Files are named events-<time>.gz and are
+ * started again every MAX_FILE_BYTES of events, see read for getting them back out.
+ *
+ * Event (big endian, 16 bytes):
+ *   long    System.nanoTime() when it happened
+ *   byte    type
+ *   byte    which board
+ *   short   data, depends on the type
+ *   int     the engine's tick count
+ */
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class Telemetry implements Closeable {
+    private static final String TAG = Telemetry.class.getSimpleName();
+
+    public static final int DEFAULT_CAPACITY = 4096;    // events, about a minute of frantic button mashing
+    public static final int DEFAULT_FLUSH_MILLIS = 2000;
+    public static final int EVENT_SIZE = 16;
+    public static final int MAX_FILE_BYTES = 1 << 20;   // events before gzip, about 65000 of them
+
+    // Event types and what their data is
+    public static final int START = 1;      // a new game, data is nothing
+    public static final int SPAWN = 2;      // a block came up, data is packPiece of it
+    public static final int PRESS = 3;      // data is the PlayerInput command, plus MOVED if the block moved
+    public static final int LOCK = 4;       // the block landed, data is how many times it was moved
+    public static final int CLEAR = 5;      // data is how many layers went
+    public static final int GAME_OVER = 6;  // data is the final score
+    public static final int RESUME = 7;     // a saved game was carried on, data is nothing. There's no START or SPAWN for it
+    public static final int UNDO = 8;       // the last landing was taken back, data is nothing. Moves count again from 0
+
+    public static final int MOVED = 0x8;
+
+    private final File dir;
+    private final int flushMillis;
+    private final long[] ring;
+    private final int mask;
+    private final byte[] batch;
+    private final Thread writer;
+    private volatile long head = 0;         // events recorded, only written by the recording thread
+    private volatile long tail = 0;         // events written out, only written by the writer
+    private volatile boolean isClosed = false;
+    private long dropped = 0;
+    private OutputStream out;               // the file being written, only touched by the writer
+    private int fileBytes = 0;
+
+    /**
+     * Telemetry: Starts recording into a folder
+     * @param dir the folder for the event files, made if it isn't there
+     * @param capacity how many events the ring holds, rounded up to a power of two
+     * @param flushMillis how long the writer waits between batches
+     */
+    public Telemetry(File dir, int capacity, int flushMillis) {
+        this.dir = dir;
+        this.flushMillis = flushMillis;
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        ring = new long[size * 2];
+        mask = size - 1;
+        batch = new byte[size * EVENT_SIZE];
+        dir.mkdirs();
+        writer = new Thread(this::writeLoop, "telemetry-writer");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.start();
+    }
+
+    /**
+     * record: Notes an event. Never allocates or waits, so it's fine in the middle of a tick
+     * @param type one of the event types
+     * @param board which board it happened on
+     * @param tick the engine's tick count
+     * @param data depends on the type, see the event types
+     */
+    public void record(int type, int board, int tick, int data) {
+        long h = head;
+        if (h - tail > mask) {
+            dropped++;  // the writer's a whole ring behind
+            return;
+        }
+        int slot = (int) (h & mask) * 2;
+        ring[slot] = System.nanoTime();
+        ring[slot + 1] = ((long) type << 56) | ((long) (board & 0xFF) << 48) | ((long) (data & 0xFFFF) << 32)
+            | (tick & 0xFFFFFFFFL);
+        head = h + 1;   // the volatile write lets the writer see the slot
+    }
+
+    /**
+     * packPiece: Squeezes a block from PieceGenerator into an event's data
+     * @param piece the block, or -1 if we don't know it
+     * @return the selection in the low 4 bits, then 6 bits each of x and z. All ones if we don't know it
+     */
+    public static int packPiece(int piece) {
+        if (piece < 0) {
+            return 0xFFFF;
+        }
+        return PieceGenerator.selectionOf(piece) | (PieceGenerator.xOf(piece) << 4) | (PieceGenerator.zOf(piece) << 10);
+    }
+
+    /**
+     * getDropped: how many events were thrown away because the writer couldn't keep up. Read it on the recording thread
+     * @return the number of events dropped
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    private void writeLoop() {
+        while (!isClosed) {
+            LockSupport.parkNanos(flushMillis * 1000000L);
+            writeBatch();
+        }
+        writeBatch();   // whatever came in while we were closing
+        if (out != null) {
+            closeFile();
+        }
+    }
+
+    // Writes out everything in the ring as one compressed batch
+    private void writeBatch() {
+        long h = head;
+        long t = tail;
+        if (h == t) {
+            return;
+        }
+        int bytes = 0;
+        for (; t < h; t++) {
+            int slot = (int) (t & mask) * 2;
+            bytes = putLong(batch, bytes, ring[slot]);
+            bytes = putLong(batch, bytes, ring[slot + 1]);
+        }
+        tail = h;   // the slots can be used again now we've copied them
+        try {
+            if (out == null) {
+                File file = new File(dir, "events-" + System.currentTimeMillis() + ".gz");
+                out = new GZIPOutputStream(new FileOutputStream(file), 8192, true);
+                fileBytes = 0;
+            }
+            out.write(batch, 0, bytes);
+            out.flush();    // sync flush, so everything up to here can be read even if the app dies
+            fileBytes += bytes;
+            if (fileBytes >= MAX_FILE_BYTES) {
+                closeFile();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write telemetry", e);
+            closeFile();
+        }
+    }
+
+    private void closeFile() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to finish telemetry file", e);
+        }
+        out = null;
+    }
+
+    private static int putLong(byte[] bytes, int at, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[at++] = (byte) (value >>> (i * 8));
+        }
+        return at;
+    }
+
+    /**
+     * close: Writes out what's left and stops the writer
+     */
+    @Override
+    public void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Event: one event read back out of a file
+     */
+    public static class Event {
+        public long timeNanos;
+        public int type;
+        public int board;
+        public int data;
+        public int tick;
+    }
+
+    /**
+     * read: Reads the events back out of a file the writer made, for analysing them. A file the app didn't get to finish
+     * is read up to the last batch that was written
+     * @param file one of the event files
+     * @return the events, oldest first
+     */
+    public static List<Event> read(File file) throws IOException {
+        List<Event> events = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            while (true) {
+                Event event = new Event();
+                event.timeNanos = in.readLong();
+                long word = in.readLong();
+                event.type = (int) (word >>> 56);
+                event.board = (int) (word >>> 48) & 0xFF;
+                event.data = (int) (word >>> 32) & 0xFFFF;
+                event.tick = (int) word;
+                events.add(event);
+            }
+        } catch (EOFException e) {
+            return events;
+        }
+    }
+}
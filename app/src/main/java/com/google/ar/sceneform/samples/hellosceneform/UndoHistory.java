@@ -0,0 +1,93 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * UNDO HISTORY
+ * The last few block placements, for undo in practice mode. Game records the engine every time a
+ * new block comes up, and undo puts the game back to when the block before it came up, so the
+ * player gets to place that block again.
+ *
+ * Every snapshot is one slice of a single long array made up front (see GameEngine.saveTo), used
+ * as a ring. Recording one copies a couple of dozen longs and never allocates. Once the ring is
+ * full the oldest placement is forgotten.
+ */
+
+public class UndoHistory {
+
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private final int capacity;
+    private final int snapshotSize;
+    private final long[] snapshots;
+    private int newest = -1;    // slot of the newest snapshot
+    private int count = 0;
+
+    /**
+     * UndoHistory: Makes room for the snapshots straight away
+     * @param engine the engine it will record, only used for its size
+     * @param capacity how many block placements to remember, at least 2
+     */
+    public UndoHistory(GameEngine engine, int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Undo needs room for at least 2 snapshots, not " + capacity);
+        }
+        this.capacity = capacity;
+        snapshotSize = engine.snapshotSize();
+        snapshots = new long[capacity * snapshotSize];
+    }
+
+    /**
+     * record: Remembers the game as it is now. Call it each time a new block comes up
+     * @param engine the game
+     */
+    public void record(GameEngine engine) {
+        newest = (newest + 1) % capacity;
+        engine.saveTo(snapshots, newest * snapshotSize);
+        if (count < capacity) {
+            count++;
+        }
+    }
+
+    /**
+     * canUndo: lets us know if there's a placement to go back past
+     * @return true if undo will do something
+     */
+    public boolean canUndo() {
+        return count >= 2;
+    }
+
+    /**
+     * undo: Forgets the newest snapshot and puts the game back to the one before it, when the last block to land had just
+     * come up. Once the game is lost the block that lost it is the one taken back, so the player can carry on practicing
+     * @param engine the game
+     * @return true if the game was put back, false if there was nothing to go back to
+     */
+    public boolean undo(GameEngine engine) {
+        if (!engine.isStarted() && count > 0) {
+            engine.loadFrom(snapshots, newest * snapshotSize);  // nothing was recorded for the block that lost
+            return true;
+        }
+        if (!canUndo()) {
+            return false;
+        }
+        newest = (newest + capacity - 1) % capacity;
+        count--;
+        engine.loadFrom(snapshots, newest * snapshotSize);
+        return true;
+    }
+
+    /**
+     * clear: Forgets everything, for when a new game starts
+     */
+    public void clear() {
+        newest = -1;
+        count = 0;
+    }
+
+    /**
+     * size: how many snapshots are held
+     * @return between 0 and the capacity
+     */
+    public int size() {
+        return count;
+    }
+}
@@ -0,0 +1,87 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * VAR INT
+ * Writes numbers in as few bytes as they need, 7 bits per byte with the top bit set on every byte
+ * but the last (the same as protobuf). Small numbers like tick counts and most packed inputs end up
+ * as a single byte, which is what keeps the network messages small.
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+public final class VarInt {
+
+    private VarInt() {
+    }
+
+    /**
+     * write: Writes a number that is treated as unsigned, so negative numbers take the full 10 bytes
+     * @param value the number
+     * @param buffer where to write it
+     */
+    public static void write(long value, ByteBuffer buffer) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * read: Reads a number written by write
+     * @param buffer where to read it from
+     * @return the number
+     */
+    public static long read(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    public static void write(long value, OutputStream out) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    public static long read(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * size: how many bytes write uses for a number
+     * @param value the number
+     * @return 1 to 10
+     */
+    public static int size(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
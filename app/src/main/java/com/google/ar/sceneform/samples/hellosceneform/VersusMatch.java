@@ -0,0 +1,112 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * VERSUS MATCH
+ * Two boards played against each other. Both get the same blocks (same seed), and every layer a
+ * player clears is pushed in under the other player's board as a garbage layer with one hole.
+ * The first player to stack too high loses.
+ *
+ * A match only moves on when it's given both players' inputs for a tick, so two devices that feed
+ * it the same inputs always agree on what happened. See LockstepSession.
+ * Lockstep ticks are shorter than the normal game's, so a press shows up quickly. The blocks still
+ * fall at the normal speed, once every GRAVITY_TICKS.
+ */
+
+import java.nio.ByteBuffer;
+
+public class VersusMatch {
+
+    public static final int GRAVITY_TICKS = 10;     // ten lockstep ticks of 100ms for each layer the blocks fall
+    public static final int DRAW = -1;
+
+    private final GameEngine[] players = new GameEngine[2];
+    private int tick;
+
+    /**
+     * VersusMatch: Starts a match
+     * @param seed both players get the blocks from this seed
+     */
+    public VersusMatch(long seed) {
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new GameEngine(seed);
+            players[i].start();
+        }
+    }
+
+    /**
+     * step: Plays one tick. Once the match is over the boards stop but the tick count carries on, so both devices stay in step
+     * @param input0 what player 0 pressed this tick, see PlayerInput
+     * @param input1 what player 1 pressed this tick
+     */
+    public void step(long input0, long input1) {
+        tick++;
+        if (isOver()) {
+            return;
+        }
+        int sent0 = PlayerInput.apply(input0, players[0]);
+        int sent1 = PlayerInput.apply(input1, players[1]);
+        if (tick % GRAVITY_TICKS == 0) {
+            players[0].tick();
+            sent0 += players[0].getLastClearedLayers();
+            players[1].tick();
+            sent1 += players[1].getLastClearedLayers();
+        }
+        players[1].queueGarbage(sent0);
+        players[0].queueGarbage(sent1);
+    }
+
+    public GameEngine getPlayer(int player) {
+        return players[player];
+    }
+
+    /**
+     * getTick: how many ticks have been played
+     */
+    public int getTick() {
+        return tick;
+    }
+
+    public boolean isOver() {
+        return !players[0].isStarted() || !players[1].isStarted();
+    }
+
+    /**
+     * getWinner: who won
+     * @return 0 or 1, or DRAW if both lost on the same tick. Only means something once isOver
+     */
+    public int getWinner() {
+        if (players[0].isStarted() == players[1].isStarted()) {
+            return DRAW;
+        }
+        return players[0].isStarted() ? 0 : 1;
+    }
+
+    /**
+     * copyFrom: Makes this match an exact copy of another one without allocating
+     */
+    public void copyFrom(VersusMatch other) {
+        tick = other.tick;
+        players[0].copyFrom(other.players[0]);
+        players[1].copyFrom(other.players[1]);
+    }
+
+    public int stateSize() {
+        return 4 + players[0].stateSize() + players[1].stateSize();
+    }
+
+    public void writeState(ByteBuffer buffer) {
+        buffer.putInt(tick);
+        players[0].writeState(buffer);
+        players[1].writeState(buffer);
+    }
+
+    public void readState(ByteBuffer buffer) {
+        tick = buffer.getInt();
+        players[0].readState(buffer);
+        players[1].readState(buffer);
+    }
+
+    public long stateHash() {
+        return (players[0].stateHash() * 31 + players[1].stateHash()) * 31 + tick;
+    }
+}
@@ -30,6 +30,11 @@ public class WelcomeActivity extends AppCompatActivity {
      * and a change of the status and navigation bar.
      */
     private static final int UI_ANIMATION_DELAY = 300;
+
+    /**
+     * The engine benchmark. It only exists in debug builds (src/debug), so it's started by name.
+     */
+    private static final String BENCHMARK_ACTIVITY = "com.google.ar.sceneform.samples.hellosceneform.BenchmarkActivity";
     private final Handler mHideHandler = new Handler();
     private View mContentView;
     private final Runnable mHidePart2Runnable = new Runnable() {
@@ -106,6 +111,9 @@ public class WelcomeActivity extends AppCompatActivity {
         // operations to prevent the jarring behavior of controls going away
         // while interacting with the UI.
         findViewById(R.id.dummy_button).setOnTouchListener(mDelayHideTouchListener);
+
+        // Release builds don't have the benchmark, so they don't get the button
+        findViewById(R.id.benchmark_button).setVisibility(BuildConfig.DEBUG ? View.VISIBLE : View.GONE);
     }
 
     @Override
@@ -165,4 +173,16 @@ public class WelcomeActivity extends AppCompatActivity {
         Intent intent = new Intent(this, MainActivity.class);
         startActivity(intent);
     }
+
+    public void onPracticeClick(View view) {
+        Intent intent = new Intent(this, MainActivity.class);
+        intent.putExtra(MainActivity.EXTRA_PRACTICE, true);
+        startActivity(intent);
+    }
+
+    public void onBenchmarkClick(View view) {
+        Intent intent = new Intent();
+        intent.setClassName(this, BENCHMARK_ACTIVITY);
+        startActivity(intent);
+    }
 }
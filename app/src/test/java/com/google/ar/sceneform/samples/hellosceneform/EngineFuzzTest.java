@@ -0,0 +1,175 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.OptionalInt;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/*
+ * Plays random games through GameEngine and ReferenceEngine side by side and checks they agree after
+ * every tick and every press. When they don't, the game is shrunk down to the fewest steps that
+ * still show the difference, and the test fails with that as the repro.
+ *
+ * Every game gets its own Random from the seed and its number, so the games run on every core at
+ * once and the first failing one is always the same however they get scheduled.
+ *
+ * A normal test run plays a few hundred games. For a proper soak, pass the number of games:
+ *   ./gradlew test -Dfuzz.games=1000000 -Dfuzz.seed=1234
+ */
+public class EngineFuzzTest {
+
+    private static final int GAMES = Integer.getInteger("fuzz.games", 500);
+    private static final long SEED = Long.getLong("fuzz.seed", 20190601L);
+    private static final int[][] SIZES = {{4, 6, 4}, {2, 4, 2}, {2, 6, 3}, {3, 5, 2}, {5, 8, 3}, {8, 8, 8}};
+    private static final String STEPS = "TLRFB";    // tick, left, right, forward, backward
+
+    // One game for the fuzzer: the board, the seed, and every step in order
+    private static class Case {
+        final int[] size;
+        final long seed;
+        final char[] steps;
+
+        Case(int[] size, long seed, char[] steps) {
+            this.size = size;
+            this.seed = seed;
+            this.steps = steps;
+        }
+
+        @Override
+        public String toString() {
+            return size[0] + "x" + size[1] + "x" + size[2] + " seed " + seed + " steps " + new String(steps);
+        }
+    }
+
+    private static Case randomCase(Random random) {
+        char[] steps = new char[20 + random.nextInt(2000)];
+        for (int i = 0; i < steps.length; i++) {
+            // Ticks about half the time, so blocks get moved around on the way down and the board fills up
+            steps[i] = random.nextBoolean() ? 'T' : STEPS.charAt(1 + random.nextInt(4));
+        }
+        return new Case(SIZES[random.nextInt(SIZES.length)], random.nextLong(), steps);
+    }
+
+    /**
+     * play: Plays a case through both engines
+     * @param why gets what was different, if anything was
+     * @return the step they first disagreed after, or -1 if they never did
+     */
+    private static int play(Case game, boolean recheckClearedLayer, StringBuilder why) {
+        int[] size = game.size;
+        ReferenceEngine reference = new ReferenceEngine(size[0], size[1], size[2], game.seed, recheckClearedLayer);
+        GameEngine engine = new GameEngine(size[0], size[1], size[2], game.seed);
+        engine.start();
+        for (int i = 0; i < game.steps.length && reference.isStarted; i++) {
+            switch (game.steps[i]) {
+                case 'T':
+                    reference.gameTick();
+                    engine.tick();
+                    break;
+                case 'L':
+                    reference.userPressedLeft();
+                    engine.moveLeft();
+                    break;
+                case 'R':
+                    reference.userPressedRight();
+                    engine.moveRight();
+                    break;
+                case 'F':
+                    reference.userPressedForward();
+                    engine.moveForward();
+                    break;
+                default:
+                    reference.userPressedBackward();
+                    engine.moveBackward();
+                    break;
+            }
+            String difference = reference.differenceFrom(engine);
+            if (difference != null) {
+                why.setLength(0);
+                why.append(difference);
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * shrink: Cuts a failing case down until taking out any one step makes it pass. Big chunks are tried first, then
+     * smaller and smaller ones
+     * @param game a case that fails
+     * @return the smallest failing case found
+     */
+    private static Case shrink(Case game, boolean recheckClearedLayer) {
+        StringBuilder why = new StringBuilder();
+        char[] steps = Arrays.copyOf(game.steps, play(game, recheckClearedLayer, why) + 1);   // nothing after matters
+        int chunk = Math.max(1, steps.length / 2);
+        while (true) {
+            boolean removedAny = false;
+            for (int start = 0; start < steps.length; ) {
+                int end = Math.min(steps.length, start + chunk);
+                char[] candidate = new char[steps.length - (end - start)];
+                System.arraycopy(steps, 0, candidate, 0, start);
+                System.arraycopy(steps, end, candidate, start, steps.length - end);
+                int failedAt = play(new Case(game.size, game.seed, candidate), recheckClearedLayer, why);
+                if (failedAt >= 0) {
+                    steps = Arrays.copyOf(candidate, failedAt + 1);
+                    removedAny = true;
+                } else {
+                    start += chunk;
+                }
+            }
+            if (chunk == 1 && !removedAny) {
+                return new Case(game.size, game.seed, steps);
+            }
+            if (!removedAny) {
+                chunk = Math.max(1, chunk / 2);
+            }
+        }
+    }
+
+    private static Case gameNumber(long seed, int game) {
+        return randomCase(new Random(seed + game * 0x9E3779B97F4A7C15L));
+    }
+
+    /**
+     * fuzz: Plays random games until one fails or we run out
+     * @return the shrunk failing case with the lowest number, or null if every game agreed
+     */
+    private static Case fuzz(long seed, int games, boolean recheckClearedLayer) {
+        OptionalInt failed = IntStream.range(0, games).parallel()
+            .filter(game -> play(gameNumber(seed, game), recheckClearedLayer, new StringBuilder()) >= 0)
+            .findFirst();
+        return failed.isPresent() ? shrink(gameNumber(seed, failed.getAsInt()), recheckClearedLayer) : null;
+    }
+
+    @Test
+    public void engineMatchesReferenceTest() {
+        Case failure = fuzz(SEED, GAMES, true);
+        if (failure != null) {
+            StringBuilder why = new StringBuilder();
+            int step = play(failure, true, why);
+            fail("GameEngine and ReferenceEngine differ after step " + step + " (" + why + ") on " + failure);
+        }
+    }
+
+    @Test
+    public void catchesBrokenEngineTest() {
+        // A reference that forgets to check a cleared layer again has to be caught, and shrunk to a repro where every
+        // step matters
+        Case failure = fuzz(SEED, 20000, false);
+        assertNotNull(failure);
+        StringBuilder why = new StringBuilder();
+        assertEquals(failure.steps.length - 1, play(failure, false, why));
+        assertTrue(why.toString(), why.indexOf("score") == 0 || why.indexOf("landed") == 0);
+        for (int i = 0; i < failure.steps.length; i++) {
+            char[] fewer = new char[failure.steps.length - 1];
+            System.arraycopy(failure.steps, 0, fewer, 0, i);
+            System.arraycopy(failure.steps, i + 1, fewer, i, fewer.length - i);
+            assertEquals(-1, play(new Case(failure.size, failure.seed, fewer), false, why));
+        }
+    }
+}
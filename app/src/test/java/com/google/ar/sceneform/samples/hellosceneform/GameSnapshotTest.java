@@ -0,0 +1,83 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GameSnapshotTest {
+
+    @Test
+    public void roundTripTest() {
+        GameEngine engine = new GameEngine(42);
+        engine.start();
+        for (int i = 0; i < 30; i++) {
+            engine.tick();
+            engine.moveLeft();
+        }
+
+        byte[] bytes = GameSnapshot.toBytes(engine, 0.5f);
+        assertTrue(bytes.length < 100);     // under a hundred bytes, not a few kilobytes
+
+        GameEngine restored = new GameEngine(7);
+        GameSnapshot snapshot = GameSnapshot.fromBytes(bytes, restored);
+        assertNotNull(snapshot);
+        assertTrue(snapshot.isStarted);
+        assertEquals(0.5f, snapshot.deltaTimeCount, 0.0f);
+        snapshot.applyTo(restored);
+        assertEquals(engine.stateHash(), restored.stateHash());
+        assertEquals(engine.getScore(), restored.getScore());
+
+        // and it carries on with the same blocks
+        for (int i = 0; i < 50; i++) {
+            engine.tick();
+            restored.tick();
+            assertEquals(engine.stateHash(), restored.stateHash());
+        }
+    }
+
+    @Test
+    public void rejectsBadBytesTest() {
+        GameEngine engine = new GameEngine(1);
+        byte[] good = GameSnapshot.toBytes(engine, 0.0f);
+        assertNull(GameSnapshot.fromBytes(null, engine));
+        assertNull(GameSnapshot.fromBytes(new byte[]{2, 4, 6, 4}, engine));                  // truncated
+        assertNull(GameSnapshot.fromBytes(new byte[good.length], engine));                   // unknown version
+        assertNull(GameSnapshot.fromBytes(good, new GameEngine(5, 6, 4, 1)));                // different board
+        assertNotNull(GameSnapshot.fromBytes(good, engine));
+    }
+
+    @Test
+    public void packAllTest() {
+        List<byte[]> states = Arrays.asList(new byte[]{1, 2, 3}, new byte[0], new byte[50]);
+        List<byte[]> unpacked = GameSnapshot.unpackAll(GameSnapshot.packAll(states));
+        assertEquals(3, unpacked.size());
+        for (int i = 0; i < states.size(); i++) {
+            assertArrayEquals(states.get(i), unpacked.get(i));
+        }
+        assertTrue(GameSnapshot.unpackAll(new byte[]{2, 0, 5, 1}).isEmpty());   // damaged
+    }
+
+    @Test
+    public void seededRandomTest() {
+        // Same numbers as java.util.Random, and carries on the same after a save and restore
+        SeededRandom seeded = new SeededRandom(42);
+        Random reference = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(reference.nextInt(11), seeded.nextInt(11));
+        }
+        long state = seeded.getState();
+        int[] expected = new int[20];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = seeded.nextInt(4);
+        }
+        SeededRandom restored = new SeededRandom();
+        restored.setState(state);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], restored.nextInt(4));
+        }
+    }
+}
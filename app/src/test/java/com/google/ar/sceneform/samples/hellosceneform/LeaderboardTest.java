@@ -0,0 +1,183 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LeaderboardTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Leaderboard.Entry randomEntry(Random random, long time) {
+        int mode = random.nextInt(2);
+        return new Leaderboard.Entry(random.nextInt(50), time, random.nextLong(), 4, 6, 4, mode);
+    }
+
+    // The best games the slow way. Sorting is stable, so older games stay ahead on a tie
+    private static List<Leaderboard.Entry> expectedTop(List<Leaderboard.Entry> all, int mode) {
+        List<Leaderboard.Entry> matching = new ArrayList<>();
+        for (Leaderboard.Entry entry : all) {
+            if (entry.mode == mode) {
+                matching.add(entry);
+            }
+        }
+        matching.sort((a, b) -> Integer.compare(b.score, a.score));
+        return matching.subList(0, Math.min(Leaderboard.TOP_SIZE, matching.size()));
+    }
+
+    private static void assertSameGames(List<Leaderboard.Entry> expected, List<Leaderboard.Entry> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).timeMillis, actual.get(i).timeMillis);
+            assertEquals(expected.get(i).score, actual.get(i).score);
+            assertEquals(expected.get(i).seed, actual.get(i).seed);
+        }
+    }
+
+    @Test
+    public void submitTest() throws Exception {
+        File dir = folder.newFolder();
+        Random random = new Random(1);
+        List<Leaderboard.Entry> all = new ArrayList<>();
+        Leaderboard leaderboard = new Leaderboard(dir);
+        for (int i = 0; i < 1000; i++) {
+            Leaderboard.Entry entry = randomEntry(random, i);
+            all.add(entry);
+            int rank = leaderboard.submit(entry);
+            List<Leaderboard.Entry> expected = expectedTop(all, entry.mode);
+            assertEquals(expected.indexOf(entry) + 1, rank);
+        }
+        assertSameGames(expectedTop(all, 0), leaderboard.top(4, 6, 4, 0, 100));
+        assertEquals(3, leaderboard.top(4, 6, 4, 1, 3).size());
+        assertTrue(leaderboard.top(5, 6, 4, 0, 100).isEmpty());
+        leaderboard.close();
+        assertEquals(1000 * 24, new File(dir, "scores.log").length());
+
+        // Opening it again reads the index
+        leaderboard = new Leaderboard(dir);
+        assertSameGames(expectedTop(all, 0), leaderboard.top(4, 6, 4, 0, 100));
+        assertSameGames(expectedTop(all, 1), leaderboard.top(4, 6, 4, 1, 100));
+        leaderboard.close();
+    }
+
+    @Test
+    public void submitLaterTest() throws Exception {
+        File dir = folder.newFolder();
+        Random random = new Random(3);
+        List<Leaderboard.Entry> all = new ArrayList<>();
+        Leaderboard leaderboard = new Leaderboard(dir);
+        int[] ranks = new int[200];
+        int[] bestScores = new int[200];
+        CountDownLatch ranked = new CountDownLatch(100);
+        for (int i = 0; i < 200; i++) {
+            // Every score is different, because games from submitLater are ranked later so they can lose a tie they'd have won
+            all.add(new Leaderboard.Entry(i * 37 % 200, i, random.nextLong(), 4, 6, 4, random.nextInt(2)));
+            if (i % 2 == 0) {
+                int index = i;
+                leaderboard.submitLater(all.get(i), null, (entry, rank, bestScore) -> {
+                    ranks[index] = rank;
+                    bestScores[index] = bestScore;
+                    ranked.countDown();
+                });
+            } else {
+                ranks[i] = leaderboard.submit(all.get(i));
+            }
+        }
+        assertTrue(ranked.await(10, TimeUnit.SECONDS));
+        assertSameGames(expectedTop(all, 0), leaderboard.top(4, 6, 4, 0, 100));
+        assertSameGames(expectedTop(all, 1), leaderboard.top(4, 6, 4, 1, 100));
+        for (int i = 0; i < 200; i += 2) {
+            assertTrue(ranks[i] > 0);
+            assertTrue(bestScores[i] >= all.get(i).score);
+        }
+        leaderboard.close();
+        assertEquals(200 * 24, new File(dir, "scores.log").length());
+
+        // Everything made it into the index, whichever way it was submitted
+        leaderboard = new Leaderboard(dir);
+        assertSameGames(expectedTop(all, 0), leaderboard.top(4, 6, 4, 0, 100));
+        assertSameGames(expectedTop(all, 1), leaderboard.top(4, 6, 4, 1, 100));
+        leaderboard.close();
+    }
+
+    @Test
+    public void replayCheckedTest() throws Exception {
+        File dir = folder.newFolder();
+        Replay replay = ReplayTest.recordGame(7, new Random(8));
+        Leaderboard leaderboard = new Leaderboard(dir);
+        int[] ranks = new int[2];
+        CountDownLatch ranked = new CountDownLatch(2);
+        leaderboard.submitLater(new Leaderboard.Entry(replay.finalScore, 0, 7, 4, 6, 4, 0), replay,
+            (entry, rank, bestScore) -> {
+                ranks[0] = rank;
+                ranked.countDown();
+            });
+        // The same game, claiming a better score than it got
+        leaderboard.submitLater(new Leaderboard.Entry(replay.finalScore + 100, 1, 7, 4, 6, 4, 0), replay,
+            (entry, rank, bestScore) -> {
+                ranks[1] = rank;
+                ranked.countDown();
+            });
+        assertTrue(ranked.await(10, TimeUnit.SECONDS));
+        assertEquals(1, ranks[0]);
+        assertEquals(Leaderboard.REJECTED, ranks[1]);
+        assertEquals(1, leaderboard.top(4, 6, 4, 0, 100).size());
+        leaderboard.close();
+        assertEquals(24, new File(dir, "scores.log").length());
+    }
+
+    @Test
+    public void recoveryTest() throws Exception {
+        File dir = folder.newFolder();
+        Random random = new Random(2);
+        List<Leaderboard.Entry> all = new ArrayList<>();
+        Leaderboard leaderboard = new Leaderboard(dir);
+        for (int i = 0; i < 300; i++) {
+            all.add(randomEntry(random, i));
+            leaderboard.submit(all.get(i));
+        }
+        leaderboard.close();
+
+        // Pretend the app died after appending some games but before the index was written, half way through a record
+        ByteBuffer buffer = ByteBuffer.allocate(50 * 24 + 10);
+        for (int i = 300; i < 350; i++) {
+            all.add(randomEntry(random, i));
+            all.get(i).write(buffer);
+        }
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "scores.log"), true)) {
+            out.write(buffer.array());
+        }
+        leaderboard = new Leaderboard(dir);
+        assertSameGames(expectedTop(all, 0), leaderboard.top(4, 6, 4, 0, 100));
+        assertEquals(350 * 24, new File(dir, "scores.log").length());
+
+        // New games go after the ones we caught up on
+        all.add(new Leaderboard.Entry(1000, 350, 0, 4, 6, 4, 0));
+        assertEquals(1, leaderboard.submit(all.get(350)));
+        leaderboard.close();
+
+        // Without an index the whole log is read, and a broken one is ignored
+        assertTrue(new File(dir, "scores.idx").delete());
+        leaderboard = new Leaderboard(dir);
+        assertSameGames(expectedTop(all, 0), leaderboard.top(4, 6, 4, 0, 100));
+        leaderboard.close();
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "scores.idx"))) {
+            out.write(new byte[]{0x42, 0x4C, 0x49, 0x31, 0, 0});
+        }
+        leaderboard = new Leaderboard(dir);
+        assertSameGames(expectedTop(all, 1), leaderboard.top(4, 6, 4, 1, 100));
+        leaderboard.close();
+    }
+}
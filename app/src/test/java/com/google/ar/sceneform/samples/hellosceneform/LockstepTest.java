@@ -0,0 +1,174 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LockstepTest {
+
+    private static final int TICKS = 400;
+
+    @Test
+    public void inputTest() {
+        long input = PlayerInput.NONE;
+        input = PlayerInput.add(input, PlayerInput.LEFT);
+        input = PlayerInput.add(input, PlayerInput.DROP);
+        input = PlayerInput.add(input, PlayerInput.BACKWARD);
+        assertEquals(3, PlayerInput.count(input));
+        assertEquals(PlayerInput.LEFT, PlayerInput.command(input, 0));
+        assertEquals(PlayerInput.DROP, PlayerInput.command(input, 1));
+        assertEquals(PlayerInput.BACKWARD, PlayerInput.command(input, 2));
+        assertEquals(1, VarInt.size(PlayerInput.NONE));
+    }
+
+    @Test
+    public void garbageTest() {
+        GameEngine engine = new GameEngine(3);
+        engine.start();
+        engine.queueGarbage(2);
+        while (engine.getBoardLayer(0) == 0) {
+            engine.tick();
+        }
+        // Two layers pushed in under the block that landed, each with one hole
+        assertEquals(15, Long.bitCount(engine.getBoardLayer(0)));
+        assertEquals(15, Long.bitCount(engine.getBoardLayer(1)));
+        assertEquals(0, engine.getPendingGarbage());
+    }
+
+    @Test
+    public void lateInputsRollBackTest() throws Exception {
+        LockstepSession host = new LockstepSession(0, 1234);
+        LockstepSession guest = new LockstepSession(1, 1234);
+        play(host, guest, new Random(5), 6, -1);
+
+        assertEquals(host.getMatch().stateHash(), guest.getMatch().stateHash());
+        assertTrue(host.getRollbacks() + guest.getRollbacks() > 0);
+        assertEquals(0, host.getDesyncs() + guest.getDesyncs());
+        assertTrue(host.getBytesSent() < TICKS * 10);   // inputs and hashes only, a few bytes a tick
+    }
+
+    @Test
+    public void desyncIsResyncedTest() throws Exception {
+        LockstepSession host = new LockstepSession(0, 99);
+        LockstepSession guest = new LockstepSession(1, 99);
+        play(host, guest, new Random(8), 1, 40);
+
+        assertTrue(guest.getDesyncs() > 0);
+        assertTrue(guest.getResyncs() > 0);
+        assertEquals(host.getMatch().stateHash(), guest.getMatch().stateHash());
+    }
+
+    @Test
+    public void loopbackSocketTest() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CyclicBarrier bothDone = new CyclicBarrier(2);
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Future<Long> hostHash = executor.submit(() -> {
+                try (LockstepConnection host = LockstepConnection.host(server, 77)) {
+                    return playOverSocket(host, new Random(1), bothDone);
+                }
+            });
+            long guestHash;
+            try (LockstepConnection guest = LockstepConnection.join(server.getInetAddress().getHostAddress(), server.getLocalPort())) {
+                guestHash = playOverSocket(guest, new Random(2), bothDone);
+            }
+            assertEquals(hostHash.get(30, TimeUnit.SECONDS).longValue(), guestHash);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static long randomInput(Random random) {
+        long input = PlayerInput.NONE;
+        if (random.nextInt(4) == 0) {
+            input = PlayerInput.add(input, 1 + random.nextInt(PlayerInput.DROP));
+        }
+        return input;
+    }
+
+    // Plays both sessions to TICKS, delivering each side's messages up to maxDelay - 1 rounds late
+    private static void play(LockstepSession host, LockstepSession guest, Random random, int maxDelay, int corruptGuestAt)
+        throws Exception {
+        ArrayDeque<Object[]> toGuest = new ArrayDeque<>();
+        ArrayDeque<Object[]> toHost = new ArrayDeque<>();
+        long hostInput = randomInput(random);
+        long guestInput = randomInput(random);
+        boolean corrupted = false;
+        for (int round = 0; round < TICKS * 10; round++) {
+            if (host.getTick() < TICKS && host.advance(hostInput)) {
+                hostInput = randomInput(random);
+            }
+            if (guest.getTick() < TICKS && guest.advance(guestInput)) {
+                guestInput = randomInput(random);
+            }
+            boolean sent = send(host, toGuest, round + random.nextInt(maxDelay));
+            sent |= send(guest, toHost, round + random.nextInt(maxDelay));
+            deliver(toGuest, guest, round);
+            deliver(toHost, host, round);
+
+            if (!corrupted && corruptGuestAt >= 0 && guest.getTick() >= corruptGuestAt
+                && guest.getConfirmedTick() == guest.getTick()) {
+                guest.getMatch().getPlayer(0).queueGarbage(3);     // something only the guest thinks happened
+                corrupted = true;
+            }
+            if (host.getConfirmedTick() == TICKS && guest.getConfirmedTick() == TICKS && !sent && toGuest.isEmpty()
+                && toHost.isEmpty()) {
+                return;
+            }
+        }
+        fail("Sessions never caught up with each other");
+    }
+
+    private static boolean send(LockstepSession from, ArrayDeque<Object[]> queue, int deliverAt) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        from.flush(bytes);
+        if (bytes.size() > 0) {
+            // Never deliver before something sent earlier, it's TCP
+            int after = queue.isEmpty() ? 0 : (Integer) queue.peekLast()[0];
+            queue.add(new Object[]{Math.max(deliverAt, after), bytes.toByteArray()});
+        }
+        return bytes.size() > 0;
+    }
+
+    private static void deliver(ArrayDeque<Object[]> queue, LockstepSession to, int round) {
+        while (!queue.isEmpty() && (Integer) queue.peekFirst()[0] <= round) {
+            to.receive(ByteBuffer.wrap((byte[]) queue.pollFirst()[1]));
+        }
+    }
+
+    private static long playOverSocket(LockstepConnection connection, Random random, CyclicBarrier bothDone) throws Exception {
+        LockstepSession session = connection.getSession();
+        long input = randomInput(random);
+        long giveUp = System.currentTimeMillis() + 20000;
+        while (session.getTick() < TICKS || session.getConfirmedTick() < TICKS) {
+            assertTrue(System.currentTimeMillis() < giveUp);
+            if (session.getTick() < TICKS) {
+                if (connection.step(input)) {
+                    input = randomInput(random);
+                }
+            } else {
+                connection.poll();
+                connection.flush();
+            }
+            if (random.nextInt(20) == 0) {
+                Thread.sleep(2);    // fall behind now and then so the other side has to guess
+            }
+        }
+        // Don't hang up until the other side has everything it needs from us
+        connection.flush();
+        bothDone.await(10, TimeUnit.SECONDS);
+        return session.getMatch().stateHash();
+    }
+}
@@ -0,0 +1,133 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class PieceGeneratorTest {
+
+    @Test
+    public void classicTest() {
+        // The classic policy draws the same numbers in the same order as the old getNextBlock, however far ahead it looks
+        for (int preview = 1; preview <= 5; preview++) {
+            PieceGenerator generator = new PieceGenerator(4, 4, 42, PiecePolicy.CLASSIC, preview);
+            Random rand = new Random(42);
+            for (int i = 0; i < 1000; i++) {
+                int selection = rand.nextInt(11);
+                int x = rand.nextInt(4);
+                int z = rand.nextInt(4);
+                if (selection == 1 || selection == 2) {
+                    x = rand.nextInt(3);
+                } else if (selection == 3 || selection == 4) {
+                    z = rand.nextInt(3);
+                } else if (selection >= 7) {
+                    z = rand.nextInt(3);
+                    x = rand.nextInt(3);
+                }
+                int piece = generator.next();
+                assertEquals(selection, PieceGenerator.selectionOf(piece));
+                assertEquals(x, PieceGenerator.xOf(piece));
+                assertEquals(z, PieceGenerator.zOf(piece));
+            }
+        }
+    }
+
+    @Test
+    public void previewTest() {
+        PieceGenerator generator = new PieceGenerator(5, 3, 7, PiecePolicy.BAG, 4);
+        PieceGenerator other = new PieceGenerator(5, 3, 7, PiecePolicy.BAG, 1);
+        for (int i = 0; i < 100; i++) {
+            int[] coming = new int[4];
+            for (int ahead = 0; ahead < 4; ahead++) {
+                coming[ahead] = generator.peek(ahead);
+            }
+            assertEquals(coming[0], generator.next());
+            for (int ahead = 0; ahead < 3; ahead++) {
+                assertEquals(coming[ahead + 1], generator.peek(ahead));
+            }
+
+            // How far ahead we look doesn't change the blocks or the state that gets saved
+            assertEquals(coming[0], other.next());
+            assertEquals(generator.getRandState(), other.getRandState());
+            assertEquals(generator.getBagState(), other.getBagState());
+        }
+
+        PieceGenerator restored = new PieceGenerator(5, 3, 0, PiecePolicy.BAG, 4);
+        restored.setState(generator.getRandState(), generator.getBagState());
+        PieceGenerator copy = new PieceGenerator(5, 3, 0, PiecePolicy.BAG, 4);
+        copy.copyFrom(generator);
+        for (int i = 0; i < 50; i++) {
+            int piece = generator.next();
+            assertEquals(piece, restored.next());
+            assertEquals(piece, copy.next());
+        }
+    }
+
+    @Test
+    public void bagTest() {
+        PiecePolicy policy = new PiecePolicy(true, 0, 2, 0, 2, 0, 1, 0, 3, 0, 0, 0);
+        PieceGenerator generator = new PieceGenerator(4, 4, 3, policy, 3);
+        for (int bag = 0; bag < 50; bag++) {
+            int[] counts = new int[PiecePolicy.SELECTIONS];
+            for (int i = 0; i < policy.getTotalWeight(); i++) {
+                counts[PieceGenerator.selectionOf(generator.next())]++;
+            }
+            for (int selection = 0; selection < PiecePolicy.SELECTIONS; selection++) {
+                assertEquals(policy.getWeight(selection), counts[selection]);
+            }
+        }
+    }
+
+    @Test
+    public void footprintTest() {
+        PieceGenerator generator = new PieceGenerator(3, 5, 9, PiecePolicy.CLASSIC, 1);
+        long fullLayer = (1L << 15) - 1;
+        int[] cells = {1, 2, 2, 2, 2, 1, 1, 3, 3, 3, 3};
+        for (int i = 0; i < 500; i++) {
+            int piece = generator.next();
+            long footprint = generator.footprint(piece);
+            assertEquals(cells[PieceGenerator.selectionOf(piece)], Long.bitCount(footprint));
+            assertEquals(0, footprint & ~fullLayer);
+        }
+    }
+
+    @Test
+    public void parallelTest() throws Exception {
+        // Every thread plays its own games, so the results only depend on the seeds
+        PieceGenerator root = new PieceGenerator(4, 4, 1234, PiecePolicy.CLASSIC, 1);
+        long[] first = playAll(root);
+        long[] second = playAll(root);
+        assertArrayEquals(first, second);
+        assertNotEquals(first[0], first[1]);
+    }
+
+    private static long[] playAll(PieceGenerator root) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            long[] hashes = new long[futures.length];
+            for (int i = 0; i < futures.length; i++) {
+                int stream = i;
+                futures[i] = executor.submit(() -> {
+                    GameEngine engine = new GameEngine(4, 6, 4, root.splitSeed(stream), PiecePolicy.BAG, 3);
+                    engine.start();
+                    while (engine.isStarted()) {
+                        engine.tick();
+                    }
+                    hashes[stream] = engine.stateHash();
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return hashes;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
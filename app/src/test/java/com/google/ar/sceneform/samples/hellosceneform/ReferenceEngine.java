@@ -0,0 +1,437 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+/*
+ * REFERENCE ENGINE
+ * The rules exactly as Game had them before they moved into GameEngine: boolean[][][] boards,
+ * copied on every step, and a java.util.Random drawn straight from. It's slow on purpose, it's
+ * the version that's easy to check by eye. EngineFuzzTest plays the same games through this and
+ * GameEngine and checks they agree after every step, so any faster engine has to match it.
+ *
+ * Only the board size has changed from the original, 4, 6 and 4 are now width, height and depth.
+ * Everything else is kept, including the odd bits:
+ *  - tetrisRows checks a layer again after removing it, because the layer that fell into it might
+ *    be full too
+ *  - checkForLoss looks from layer height - 1 up, so filling the top layer of the frame loses
+ */
+
+import java.util.Random;
+
+public class ReferenceEngine {
+
+    private final int width;
+    private final int height;
+    private final int renderableHeight;
+    private final int depth;
+    private final boolean recheckClearedLayer;  // false makes a broken engine, to check the fuzzer catches it
+
+    boolean isStarted = true;
+    boolean[][][] blockArray;
+    boolean[][][] fallingBlockArray;
+    Random rand;
+    int score = 0;
+
+    /**
+     * ReferenceEngine: Starts a game, like Game.createGame used to
+     * @param seed decides which blocks come up
+     */
+    public ReferenceEngine(int width, int height, int depth, long seed) {
+        this(width, height, depth, seed, true);
+    }
+
+    ReferenceEngine(int width, int height, int depth, long seed, boolean recheckClearedLayer) {
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.recheckClearedLayer = recheckClearedLayer;
+        renderableHeight = height + GameEngine.SPAWN_ROOM;
+        blockArray = new boolean[width][renderableHeight][depth];
+        fallingBlockArray = new boolean[width][renderableHeight][depth];
+        rand = new Random(seed);
+        getNextBlock();
+    }
+
+    /**
+     * gameTick: Is called each tick of the game. Not every frame, but each time we want the blocks to move one block down.
+     */
+    public void gameTick(){
+
+        // First let's see what will happen if we move the falling blocks down one, check to see if there are any collisions
+        // If there are no collisions, we are good to go! Move the falling blocks down one.
+        // If there is a collision, don't drop the falling blocks but add them to the landed blocks array and go from there
+
+        if (isCollided(blockArray, dropFallingBlocks(fallingBlockArray)) || blocksAtBottom(fallingBlockArray)){
+            // There is a collision if we let the blocks fall one more block! so let's add them to the landed blocks array
+            blockArray = combineArrays(blockArray, fallingBlockArray);
+            // Check if there are any full levels and tetris them
+            blockArray = tetrisRows(blockArray);
+            // Check if the player has stacked too high and lost like a loser
+            if (checkForLoss(blockArray)){
+                blockArray = new boolean[width][renderableHeight][depth];
+                fallingBlockArray = new boolean[width][renderableHeight][depth];
+                isStarted = false;          // player has lost!
+            }
+            // Get the next block if we haven't lost
+            if (isStarted){
+                getNextBlock();
+            }
+        }else{
+            fallingBlockArray = dropFallingBlocks(fallingBlockArray);   // Safe from collisions, so move our blocks down
+        }
+    }
+
+    /**
+     * getNextBlock: Places the next random block into the falling block array
+     */
+    public void getNextBlock(){
+        // clear the array
+        for (int x=0;x<width;x++){
+            for (int y=0;y<renderableHeight;y++){
+                for (int z=0;z<depth;z++){
+                    fallingBlockArray[x][y][z] = false;
+                }
+            }
+        }
+        int top = height;
+        int nextBlockSelection = rand.nextInt(11);
+        int nextBlockX = rand.nextInt(width);
+        int nextBlockZ = rand.nextInt(depth);
+
+        // Program in the next block
+        if (nextBlockSelection == 0){
+            fallingBlockArray[nextBlockX][top][nextBlockZ] = true;  // Single 1x1 block
+        }
+
+        if (nextBlockSelection == 1 || nextBlockSelection == 2){    // These blocks can come up twice as likely cos they're the nicest
+            int nextBlockXLimited = rand.nextInt(width-1);
+            fallingBlockArray[nextBlockXLimited][top][nextBlockZ] = true;  // 2x1 horizontal on x
+            fallingBlockArray[nextBlockXLimited+1][top][nextBlockZ] = true;
+        }
+
+        if (nextBlockSelection == 3 || nextBlockSelection == 4){
+            int nextBlockZLimited = rand.nextInt(depth-1);
+            fallingBlockArray[nextBlockX][top][nextBlockZLimited] = true;  // 2x1 horizontal on y
+            fallingBlockArray[nextBlockX][top][nextBlockZLimited+1] = true;
+        }
+
+        if (nextBlockSelection == 5 || nextBlockSelection == 6){
+            fallingBlockArray[nextBlockX][top][nextBlockZ] = true;  // 2x1 vertical
+            fallingBlockArray[nextBlockX][top+1][nextBlockZ] = true;
+        }
+
+        if (nextBlockSelection == 7){
+            int nextBlockZLimited = rand.nextInt(depth-1);
+            int nextBlockXLimited = rand.nextInt(width-1);
+            fallingBlockArray[nextBlockXLimited][top][nextBlockZLimited] = true;    // X X  block
+            fallingBlockArray[nextBlockXLimited][top][nextBlockZLimited+1] = true;  // X
+            fallingBlockArray[nextBlockXLimited+1][top][nextBlockZLimited] = true;
+        }
+
+        if (nextBlockSelection == 8){
+            int nextBlockZLimited = rand.nextInt(depth-1);
+            int nextBlockXLimited = rand.nextInt(width-1);
+            fallingBlockArray[nextBlockXLimited][top][nextBlockZLimited] = true;    // X X  block
+            fallingBlockArray[nextBlockXLimited][top][nextBlockZLimited+1] = true;  // X
+            fallingBlockArray[nextBlockXLimited+1][top][nextBlockZLimited+1] = true;
+        }
+
+        if (nextBlockSelection == 9){
+            int nextBlockZLimited = rand.nextInt(depth-1);
+            int nextBlockXLimited = rand.nextInt(width-1);
+            fallingBlockArray[nextBlockXLimited+1][top][nextBlockZLimited] = true;    // X X  block
+            fallingBlockArray[nextBlockXLimited][top][nextBlockZLimited+1] = true;    // X
+            fallingBlockArray[nextBlockXLimited+1][top][nextBlockZLimited+1] = true;
+        }
+
+        if (nextBlockSelection == 10){
+            int nextBlockZLimited = rand.nextInt(depth-1);
+            int nextBlockXLimited = rand.nextInt(width-1);
+            fallingBlockArray[nextBlockXLimited+1][top][nextBlockZLimited] = true;    // X X  block
+            fallingBlockArray[nextBlockXLimited][top][nextBlockZLimited] = true;      // X
+            fallingBlockArray[nextBlockXLimited+1][top][nextBlockZLimited+1] = true;
+        }
+    }
+
+    /**
+     * isCollided: lets us know if there's any colliding blocks in the two arrays passed
+     * @return true if there is a point in the array where both arrays are true, otherwise false
+     */
+    public boolean isCollided(boolean[][][] c, boolean[][][] d){
+        boolean[][][] a = copyArray(c);
+        boolean[][][] b = copyArray(d);
+        for (int x=0;x<width;x++){
+            for (int y=0;y<renderableHeight;y++){
+                for (int z=0;z<depth;z++){
+                    if (a[x][y][z] && b[x][y][z]){  // Collision!
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;   // no coliisions
+    }
+
+    /**
+     * blocksAtBottom: returns true if there are blocks on the floor of the play area. used to tell if the falling blocks have hit the floor
+     */
+    public boolean blocksAtBottom(boolean[][][] a){
+        for (int x=0;x<width;x++){
+            for (int z=0;z<depth;z++){
+                if (a[x][0][z]){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * dropFallingBlocks: moves all the true blocks in the falling blocks array down one.
+     * @return the same array where every block is shifted down one
+     */
+    public boolean[][][] dropFallingBlocks(boolean[][][] b){
+        boolean[][][] a = copyArray(b);
+        for (int x=0;x<width;x++){
+            for (int y=0;y<renderableHeight-1;y++){
+                for (int z=0;z<depth;z++){
+                    a[x][y][z] = a[x][y+1][z];  // this has the effect of moving all the blocks down one (i hope)
+                }
+            }
+        }
+        for (int x=0;x<width;x++){
+            for (int z=0;z<depth;z++){
+                a[x][renderableHeight-1][z] = false;         // clear the top layer manually cos it gets missed by that fancy algorithm
+            }
+        }
+        return a;
+    }
+
+    /**
+     * combineArrays: returns an array of the two passed arrays where a true in either results in a true in the result.
+     * @return both arrays after passing through an OR function
+     */
+    public boolean[][][] combineArrays(boolean[][][] c, boolean[][][] d){
+        boolean[][][] a = copyArray(c);
+        boolean[][][] b = copyArray(d);
+        for (int x=0;x<width;x++){
+            for (int y=0;y<renderableHeight;y++){
+                for (int z=0;z<depth;z++){
+                    a[x][y][z] = a[x][y][z] || b[x][y][z];  // I'm proud of this
+                }
+            }
+        }
+        return a;
+    }
+
+    /**
+     * tetrisRows: Checks every level of the array. If there is a row that's full, remove it and move all the blocks above it down.
+     * @return the array with operations applied
+     */
+    public boolean[][][] tetrisRows(boolean[][][] a){
+        for (int y=0;y<height;y++){
+            boolean isBlankSquare = false;
+            for (int x=0;x<width;x++){
+                for (int z=0;z<depth;z++){
+                    if (!a[x][y][z]){
+                        isBlankSquare = true;
+                    }
+                }
+            }
+            if (!isBlankSquare){    // Tetris'ed a row! Good job.
+                for (int x=0;x<width;x++){
+                    for (int yy=y;yy<renderableHeight-1;yy++){
+                        for (int z=0;z<depth;z++){
+                            a[x][yy][z] = a[x][yy+1][z];  // this has the effect of moving all the blocks down one (i hope)
+                        }
+                    }
+                }
+                for (int x=0;x<width;x++){
+                    for (int z=0;z<depth;z++){
+                        a[x][renderableHeight-1][z] = false;         // clear the top layer manually cos it gets missed by that fancy algorithm
+                    }
+                }
+                score++;
+                if (recheckClearedLayer){
+                    y--;        // Since the row above fell into the row we're looking at now we need to do this row again
+                }
+            }
+        }
+        return a;
+    }
+
+    /**
+     * checkForLoss: Checks all the blocks at the top of the game. If there is a block there, the player has lost the game (stacked too high)
+     * @return true if player has lost, otherwise false
+     */
+    public boolean checkForLoss(boolean[][][] a){
+        for (int x=0;x<width;x++){
+            for (int y=height-1;y<renderableHeight;y++){
+                for (int z=0;z<depth;z++){
+                    if (a[x][y][z]){
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    public static boolean[][][] copyArray(boolean[][][] a){
+        return Game.copyArray(a);
+    }
+
+    /**
+     * userPressedLeft: moves a falling block left when there are no collisions
+     */
+    public void userPressedLeft() {
+        boolean[][][] a = copyArray(fallingBlockArray);
+        boolean blockAtEdge = false;
+        for (int y=0;y<renderableHeight;y++){
+            for (int z=0;z<depth;z++){
+                if (a[0][y][z]){
+                    blockAtEdge = true;
+                }
+            }
+        }
+        if (!blockAtEdge) {
+            for (int x=0;x<width-1;x++){
+                for (int y=0;y<renderableHeight;y++){
+                    for (int z=0;z<depth;z++){
+                        a[x][y][z] = a[x+1][y][z];
+                    }
+                }
+            }
+            for (int y=0;y<renderableHeight;y++){
+                for (int z=0;z<depth;z++){
+                    a[width-1][y][z] = false;
+                }
+            }
+            if (!isCollided(blockArray, a)) {
+                fallingBlockArray = a;
+            }
+        }
+    }
+
+    /**
+     * userPressedRight: moves a falling block right when there are no collisions
+     */
+    public void userPressedRight() {
+        boolean[][][] a = copyArray(fallingBlockArray);
+        boolean blockAtEdge = false;
+        for (int y=0;y<renderableHeight;y++){
+            for (int z=0;z<depth;z++){
+                if (a[width-1][y][z]){
+                    blockAtEdge = true;
+                }
+            }
+        }
+        if (!blockAtEdge) {
+            for (int x=width-1;x>0;x--){
+                for (int y=0;y<renderableHeight;y++){
+                    for (int z=0;z<depth;z++){
+                        a[x][y][z] = a[x-1][y][z];
+                    }
+                }
+            }
+            for (int y=0;y<renderableHeight;y++){
+                for (int z=0;z<depth;z++){
+                    a[0][y][z] = false;
+                }
+            }
+            if (!isCollided(blockArray, a)) {
+                fallingBlockArray = a;
+            }
+        }
+    }
+
+    /**
+     * userPressedForward: moves a falling block forward when there are no collisions
+     */
+    public void userPressedForward() {
+        boolean[][][] a = copyArray(fallingBlockArray);
+        boolean blockAtEdge = false;
+        for (int x=0;x<width;x++){
+            for (int y=0;y<renderableHeight;y++){
+                if (a[x][y][0]){
+                    blockAtEdge = true;
+                }
+            }
+        }
+        if (!blockAtEdge) {
+            for (int x=0;x<width;x++){
+                for (int y=0;y<renderableHeight;y++){
+                    for (int z=0;z<depth-1;z++){
+                        a[x][y][z] = a[x][y][z+1];
+                    }
+                }
+            }
+            for (int x=0;x<width;x++){
+                for (int y=0;y<renderableHeight;y++){
+                    a[x][y][depth-1] = false;
+                }
+            }
+            if (!isCollided(blockArray, a)) {
+                fallingBlockArray = a;
+            }
+        }
+    }
+
+    /**
+     * userPressedBackward: moves a falling block backward when there are no collisions
+     */
+    public void userPressedBackward() {
+        boolean[][][] a = copyArray(fallingBlockArray);
+        boolean blockAtEdge = false;
+        for (int x=0;x<width;x++){
+            for (int y=0;y<renderableHeight;y++){
+                if (a[x][y][depth-1]){
+                    blockAtEdge = true;
+                }
+            }
+        }
+        if (!blockAtEdge) {
+            for (int x=0;x<width;x++){
+                for (int y=0;y<renderableHeight;y++){
+                    for (int z=depth-1;z>0;z--){
+                        a[x][y][z] = a[x][y][z-1];
+                    }
+                }
+            }
+            for (int x=0;x<width;x++){
+                for (int y=0;y<renderableHeight;y++){
+                    a[x][y][0] = false;
+                }
+            }
+            if (!isCollided(blockArray, a)) {
+                fallingBlockArray = a;
+            }
+        }
+    }
+
+    /**
+     * differenceFrom: Compares this game with an engine playing the same game
+     * @param engine the engine
+     * @return what's different, or null if they agree on everything
+     */
+    public String differenceFrom(GameEngine engine){
+        if (isStarted != engine.isStarted()){
+            return "isStarted " + isStarted + " vs " + engine.isStarted();
+        }
+        if (score != engine.getScore()){
+            return "score " + score + " vs " + engine.getScore();
+        }
+        for (int y=0;y<renderableHeight;y++){
+            for (int x=0;x<width;x++){
+                for (int z=0;z<depth;z++){
+                    long bit = 1L << (x*depth + z);
+                    if (blockArray[x][y][z] != ((engine.getBoardLayer(y) & bit) != 0)){
+                        return "landed block at " + x + "," + y + "," + z;
+                    }
+                    if (fallingBlockArray[x][y][z] != ((engine.getFallingLayer(y) & bit) != 0)){
+                        return "falling block at " + x + "," + y + "," + z;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
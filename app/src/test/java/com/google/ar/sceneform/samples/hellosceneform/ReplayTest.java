@@ -0,0 +1,87 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ReplayTest {
+
+    // Plays a whole game the way Game does, pressing a few random buttons between ticks. LeaderboardTest uses it too
+    static Replay recordGame(long seed, Random random) {
+        GameEngine engine = new GameEngine(0);
+        ReplayRecorder recorder = new ReplayRecorder();
+        engine.start(seed);
+        recorder.begin(engine, seed);
+        while (engine.isStarted()) {
+            int presses = random.nextInt(3);
+            for (int i = 0; i < presses; i++) {
+                int command = PlayerInput.LEFT + random.nextInt(4);
+                recorder.press(command);
+                PlayerInput.apply(PlayerInput.add(PlayerInput.NONE, command), engine);
+            }
+            engine.tick();
+            recorder.tick(engine);
+        }
+        return recorder.finish(engine);
+    }
+
+    @Test
+    public void roundTripTest() {
+        Replay replay = recordGame(42, new Random(1));
+        Replay unpacked = Replay.fromBytes(replay.toBytes());
+        assertNotNull(unpacked);
+        assertEquals(ReplayVerifier.VALID, ReplayVerifier.findDivergence(unpacked));
+        assertArrayEquals(replay.inputs, unpacked.inputs);
+        assertEquals(replay.finalScore, unpacked.finalScore);
+        assertNull(Replay.fromBytes(new byte[]{1, 4, 6, 4}));
+    }
+
+    @Test
+    public void batchTest() {
+        Random random = new Random(2);
+        List<byte[]> batch = new ArrayList<>();
+        Replay longGame = null;
+        for (int i = 0; i < 400; i++) {
+            Replay replay = recordGame(random.nextLong(), random);
+            if (longGame == null && replay.inputs.length > 60) {
+                longGame = replay;
+            }
+            batch.add(replay.toBytes());
+        }
+        assertNotNull(longGame);
+
+        Replay otherSeed = Replay.fromBytes(longGame.toBytes());
+        otherSeed.seed++;
+        batch.set(10, otherSeed.toBytes());
+
+        Replay extraDrop = Replay.fromBytes(longGame.toBytes());
+        extraDrop.inputs[40] = PlayerInput.add(extraDrop.inputs[40], PlayerInput.DROP);
+        batch.set(20, extraDrop.toBytes());
+
+        Replay betterScore = Replay.fromBytes(longGame.toBytes());
+        betterScore.finalScore += 5;
+        batch.set(30, betterScore.toBytes());
+
+        batch.set(40, new byte[]{9, 9, 9});
+
+        ReplayVerifier.Report report;
+        try (ReplayVerifier verifier = new ReplayVerifier(4, 8)) {
+            report = verifier.verifyAll(batch.iterator());
+        }
+        assertEquals(batch.size() - 4, report.valid);
+        assertEquals(4, report.invalid);
+        assertEquals(10, report.failures.get(0).index);
+        assertEquals(0, report.failures.get(0).divergedAtTick);
+        assertEquals(20, report.failures.get(1).index);
+        assertEquals(40, report.failures.get(1).divergedAtTick);
+        assertEquals(30, report.failures.get(2).index);
+        assertEquals(longGame.inputs.length, report.failures.get(2).divergedAtTick);
+        assertEquals(40, report.failures.get(3).index);
+        assertEquals(ReplayVerifier.UNREADABLE, report.failures.get(3).divergedAtTick);
+        assertTrue(report.replaysPerSecond() > 0);
+    }
+}
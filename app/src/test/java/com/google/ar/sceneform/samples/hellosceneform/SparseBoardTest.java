@@ -0,0 +1,114 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SparseBoardTest {
+
+    @Test
+    public void setAndGetTest() {
+        SparseBoard board = new SparseBoard(6, 2000, 5);
+        assertEquals(0, board.chunkCount());
+        board.set(5, 1999, 4, true);
+        board.set(0, 0, 0, true);
+        assertTrue(board.get(5, 1999, 4));
+        assertTrue(board.get(0, 0, 0));
+        assertFalse(board.get(1, 0, 0));
+        assertFalse(board.get(-1, 0, 0));       // outside the board is empty
+        assertEquals(2, board.chunkCount());    // only the chunks with blocks in them exist
+        board.set(5, 1999, 4, false);
+        assertEquals(1, board.chunkCount());    // and they go away when they're emptied
+    }
+
+    @Test
+    public void layerTest() {
+        // 6x5 doesn't fit the 4x4 chunks exactly, so the edge chunks are only partly inside the board
+        SparseBoard board = new SparseBoard(6, 12, 5);
+        for (int x = 0; x < 6; x++) {
+            for (int z = 0; z < 5; z++) {
+                board.set(x, 3, z, true);
+            }
+        }
+        board.set(2, 4, 2, true);
+        board.set(1, 9, 1, true);
+        assertTrue(board.isLayerFull(3));
+        assertFalse(board.isLayerFull(4));
+        assertTrue(board.anyFilledFrom(9));
+        assertFalse(board.anyFilledFrom(10));
+
+        assertEquals(1, board.clearFullLayers(0, 11));
+        assertFalse(board.isLayerFull(3));
+        assertTrue(board.get(2, 3, 2));     // the block above dropped into the cleared layer
+        assertTrue(board.get(1, 8, 1));     // and so did everything above that, across the chunk boundary
+        assertFalse(board.get(1, 9, 1));
+    }
+
+    @Test
+    public void matchesDenseBoardTest() {
+        // Random fills and layer removals compared against a plain boolean array
+        Random random = new Random(7);
+        int width = 5, height = 23, depth = 6;
+        SparseBoard board = new SparseBoard(width, height, depth);
+        boolean[][][] dense = new boolean[width][height][depth];
+        for (int step = 0; step < 5000; step++) {
+            if (random.nextInt(40) == 0) {
+                int y = random.nextInt(height);
+                board.removeLayer(y);
+                for (int yy = y; yy < height - 1; yy++) {
+                    for (int x = 0; x < width; x++) {
+                        for (int z = 0; z < depth; z++) {
+                            dense[x][yy][z] = dense[x][yy + 1][z];
+                        }
+                    }
+                }
+                for (int x = 0; x < width; x++) {
+                    for (int z = 0; z < depth; z++) {
+                        dense[x][height - 1][z] = false;
+                    }
+                }
+            } else {
+                int x = random.nextInt(width), y = random.nextInt(height), z = random.nextInt(depth);
+                boolean filled = random.nextInt(3) != 0;
+                board.set(x, y, z, filled);
+                dense[x][y][z] = filled;
+            }
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    for (int z = 0; z < depth; z++) {
+                        assertEquals("step " + step, dense[x][y][z], board.get(x, y, z));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void removeLayerNoAllocationTest() {
+        // A tall stack, every other cell filled so no layer is ever full. Taking layers out from under it has to move
+        // all of it down without making garbage
+        SparseBoard board = new SparseBoard(8, 2000, 8);
+        for (int y = 0; y < 100; y++) {
+            for (int x = 0; x < 8; x++) {
+                for (int z = 0; z < 8; z++) {
+                    board.set(x, y, z, (x + y + z) % 2 == 0);
+                }
+            }
+        }
+        board.removeLayer(0);   // warm up
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 10; i++) {
+            board.removeLayer(0);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue("removeLayer allocated " + allocated + " bytes", allocated < 1024);
+        assertTrue(board.get(0, 0, 1));         // layer 11 came down to 0, and it has the other pattern
+        assertFalse(board.anyFilledFrom(89));   // 11 layers gone off the top of the stack
+        assertTrue(board.anyFilledFrom(88));
+    }
+}
@@ -0,0 +1,171 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SpectatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Moves the game on one random step, the way a player would: mostly moves, sometimes a tick
+    private static void play(GameEngine engine, Random random) {
+        if (!engine.isStarted()) {
+            engine.start();
+        }
+        switch (random.nextInt(6)) {
+            case 0:
+                engine.moveLeft();
+                break;
+            case 1:
+                engine.moveRight();
+                break;
+            case 2:
+                engine.moveForward();
+                break;
+            case 3:
+                engine.moveBackward();
+                break;
+            default:
+                engine.tick();
+                break;
+        }
+    }
+
+    private static void assertSameBoard(GameEngine engine, SpectatorClient client) {
+        for (int y = 0; y < engine.getRenderableHeight(); y++) {
+            assertEquals(engine.getBoardLayer(y) | engine.getFallingLayer(y), client.getLayer(y));
+        }
+        assertEquals(engine.getScore(), client.getScore());
+        assertEquals(!engine.isStarted(), client.isOver());
+    }
+
+    @Test
+    public void everyFrameMatchesTest() {
+        GameEngine engine = new GameEngine(11);
+        engine.start();
+        SpectatorEncoder encoder = new SpectatorEncoder(engine);
+        SpectatorClient client = new SpectatorClient();
+        ByteBuffer frame = ByteBuffer.allocate(encoder.maxFrameSize());
+        Random random = new Random(3);
+        long bytes = 0;
+        int frames = 0;
+        for (int i = 0; i < 20000; i++) {
+            play(engine, random);
+            frame.clear();
+            if (encoder.encode(engine, frame, false)) {
+                frame.flip();
+                bytes += frame.remaining();
+                frames++;
+                VarInt.read(frame);     // the length
+                assertTrue(client.applyFrame(frame.slice()));
+            }
+            assertSameBoard(engine, client);
+        }
+        // A full dump is two bytes a layer plus the score. Diffs should be well under that
+        double bytesPerFrame = (double) bytes / frames;
+        assertTrue("bytes per frame " + bytesPerFrame, bytesPerFrame < 10);
+    }
+
+    @Test
+    public void lateJoinerWaitsForKeyframeTest() {
+        GameEngine engine = new GameEngine(12);
+        engine.start();
+        SpectatorEncoder encoder = new SpectatorEncoder(engine);
+        Random random = new Random(4);
+        List<byte[]> frames = new ArrayList<>();
+        ByteBuffer frame = ByteBuffer.allocate(encoder.maxFrameSize());
+        for (int i = 0; i < 500; i++) {
+            play(engine, random);
+            frame.clear();
+            if (encoder.encode(engine, frame, false)) {
+                frame.flip();
+                VarInt.read(frame);
+                byte[] body = new byte[frame.remaining()];
+                frame.get(body);
+                frames.add(body);
+            }
+        }
+
+        SpectatorClient client = new SpectatorClient();
+        assertFalse(client.applyFrame(ByteBuffer.wrap(frames.get(SpectatorEncoder.KEYFRAME_INTERVAL + 1))));
+        assertFalse(client.isSynced());
+        for (int i = SpectatorEncoder.KEYFRAME_INTERVAL + 2; i < frames.size(); i++) {
+            client.applyFrame(ByteBuffer.wrap(frames.get(i)));
+        }
+        assertTrue(client.isSynced());
+        assertSameBoard(engine, client);
+    }
+
+    @Test
+    public void fileTest() throws Exception {
+        File file = folder.newFile("game.spectate");
+        GameEngine engine = new GameEngine(13);
+        engine.start();
+        Random random = new Random(5);
+        try (SpectatorStream stream = SpectatorStream.toFile(engine, file)) {
+            for (int i = 0; i < 3000; i++) {
+                play(engine, random);
+                stream.publish();
+            }
+            assertTrue(stream.getFramesPublished() > 0);
+        }   // frames might be dropped if the disk is slow, but close always finishes on the whole board
+        SpectatorClient client = new SpectatorClient();
+        try (InputStream in = new FileInputStream(file)) {
+            client.readAll(in);
+        }
+        assertSameBoard(engine, client);
+        assertEquals(file.length(), client.getBytesRead());
+    }
+
+    @Test
+    public void socketTest() throws Exception {
+        GameEngine engine = new GameEngine(14);
+        engine.start();
+        Random random = new Random(6);
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        SpectatorStream stream = SpectatorStream.listen(engine, server);
+        try {
+            Socket socket = new Socket(server.getInetAddress(), server.getLocalPort());
+            SpectatorClient client = new SpectatorClient();
+            Future<?> reading = executor.submit(() -> {
+                client.readAll(socket.getInputStream());
+                return null;
+            });
+            for (int i = 0; i < 2000; i++) {
+                play(engine, random);
+                stream.publish();
+                if (i % 100 == 0) {
+                    Thread.sleep(5);
+                }
+            }
+            stream.close();
+            reading.get(10, TimeUnit.SECONDS);
+            socket.close();
+            assertTrue(client.getKeyframes() > 0);
+            assertSameBoard(engine, client);
+        } finally {
+            stream.close();     // does nothing if it's closed already
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TelemetryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<Telemetry.Event> readAll(File dir) throws Exception {
+        File[] files = dir.listFiles();
+        Arrays.sort(files);
+        List<Telemetry.Event> events = new ArrayList<>();
+        for (File file : files) {
+            events.addAll(Telemetry.read(file));
+        }
+        return events;
+    }
+
+    @Test
+    public void gameTest() throws Exception {
+        // Record a game the way Game does, with the writer taking batches as it goes
+        File dir = folder.newFolder();
+        Telemetry telemetry = new Telemetry(dir, 8192, 1);
+        GameEngine engine = new GameEngine(3);
+        engine.start();
+        telemetry.record(Telemetry.START, 2, 0, 0);
+        telemetry.record(Telemetry.SPAWN, 2, 0, Telemetry.packPiece(engine.getLastSpawned()));
+        int spawns = 1;
+        int presses = 0;
+        while (engine.isStarted()) {
+            boolean moved = engine.moveRight();
+            telemetry.record(Telemetry.PRESS, 2, engine.getTickCount(), PlayerInput.RIGHT | (moved ? Telemetry.MOVED : 0));
+            presses++;
+            engine.tick();
+            if (engine.hasJustLanded()) {
+                telemetry.record(Telemetry.LOCK, 2, engine.getTickCount(), 0);
+                if (engine.isStarted()) {
+                    telemetry.record(Telemetry.SPAWN, 2, engine.getTickCount(), Telemetry.packPiece(engine.getLastSpawned()));
+                    spawns++;
+                } else {
+                    telemetry.record(Telemetry.GAME_OVER, 2, engine.getTickCount(), engine.getScore());
+                }
+            }
+        }
+        telemetry.close();
+        assertEquals(0, telemetry.getDropped());
+
+        List<Telemetry.Event> events = readAll(dir);
+        assertEquals(Telemetry.START, events.get(0).type);
+        assertEquals(Telemetry.GAME_OVER, events.get(events.size() - 1).type);
+        assertEquals(engine.getTickCount(), events.get(events.size() - 1).tick);
+        int[] counts = new int[7];
+        for (int i = 0; i < events.size(); i++) {
+            Telemetry.Event event = events.get(i);
+            counts[event.type]++;
+            assertEquals(2, event.board);
+            if (i > 0) {
+                assertTrue(event.timeNanos >= events.get(i - 1).timeNanos);
+            }
+            if (event.type == Telemetry.SPAWN) {
+                assertTrue((event.data & 0xF) < PiecePolicy.SELECTIONS);
+            }
+        }
+        assertEquals(spawns, counts[Telemetry.SPAWN]);
+        assertEquals(presses, counts[Telemetry.PRESS]);
+        assertEquals(spawns, counts[Telemetry.LOCK]);
+    }
+
+    @Test
+    public void dropTest() throws Exception {
+        // A writer that never gets round to it loses the newest events, it doesn't hold up the game
+        File dir = folder.newFolder();
+        Telemetry telemetry = new Telemetry(dir, 16, 60000);
+        for (int i = 0; i < 100; i++) {
+            telemetry.record(Telemetry.PRESS, 0, i, PlayerInput.LEFT);
+        }
+        assertEquals(84, telemetry.getDropped());
+        telemetry.close();
+        List<Telemetry.Event> events = readAll(dir);
+        assertEquals(16, events.size());
+        assertEquals(15, events.get(15).tick);
+    }
+
+    @Test
+    public void noAllocationTest() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        Telemetry telemetry = new Telemetry(folder.newFolder(), 1024, 1);
+        for (int i = 0; i < 20000; i++) {
+            telemetry.record(Telemetry.PRESS, 0, i, PlayerInput.LEFT);    // warm up
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100000; i++) {
+            telemetry.record(Telemetry.PRESS, 0, i, PlayerInput.LEFT);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        telemetry.close();
+        assertTrue("record allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
@@ -0,0 +1,87 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UndoHistoryTest {
+
+    @Test
+    public void saveAndLoadTest() {
+        GameEngine engine = new GameEngine(5);
+        engine.start();
+        for (int i = 0; i < 30; i++) {
+            engine.moveLeft();
+            engine.tick();
+        }
+        engine.queueGarbage(1);
+        long[] snapshot = new long[engine.snapshotSize() + 3];
+        engine.saveTo(snapshot, 3);
+
+        GameEngine copy = new GameEngine(99);
+        copy.loadFrom(snapshot, 3);
+        assertEquals(engine.stateHash(), copy.stateHash());
+    }
+
+    @Test
+    public void undoTest() {
+        GameEngine engine = new GameEngine(6);
+        UndoHistory history = new UndoHistory(engine, 4);
+        assertFalse(history.undo(engine));
+
+        // Record every block that comes up, like Game does
+        List<Long> placements = new ArrayList<>();
+        engine.start();
+        history.record(engine);
+        placements.add(engine.stateHash());
+        while (placements.size() < 10) {
+            engine.moveBackward();
+            engine.tick();
+            if (engine.hasJustLanded() && engine.isStarted()) {
+                history.record(engine);
+                placements.add(engine.stateHash());
+            }
+        }
+
+        // Only the last 4 are kept, and undo goes back one block at a time
+        assertEquals(4, history.size());
+        assertTrue(history.undo(engine));
+        assertEquals((long) placements.get(8), engine.stateHash());
+        assertTrue(history.undo(engine));
+        assertEquals((long) placements.get(7), engine.stateHash());
+        assertTrue(history.undo(engine));
+        assertEquals((long) placements.get(6), engine.stateHash());
+        assertFalse(history.undo(engine));
+        assertEquals((long) placements.get(6), engine.stateHash());
+
+        // Playing on from an undo gives the same blocks as the first time
+        history.record(engine);
+        while (!engine.hasJustLanded()) {
+            engine.moveBackward();
+            engine.tick();
+        }
+        assertEquals((long) placements.get(7), engine.stateHash());
+    }
+
+    @Test
+    public void undoAfterLosingTest() {
+        GameEngine engine = new GameEngine(7);
+        UndoHistory history = new UndoHistory(engine, UndoHistory.DEFAULT_CAPACITY);
+        engine.start();
+        history.record(engine);
+        long lastBlock = engine.stateHash();
+        while (engine.isStarted()) {
+            engine.tick();
+            if (engine.hasJustLanded() && engine.isStarted()) {
+                history.record(engine);
+                lastBlock = engine.stateHash();
+            }
+        }
+        assertTrue(history.undo(engine));
+        assertTrue(engine.isStarted());
+        assertEquals(lastBlock, engine.stateHash());
+    }
+}
@@ -0,0 +1,84 @@
+package com.google.ar.sceneform.samples.hellosceneform;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EngineBenchmarkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // The desktop JVM's GC numbers, added up over every collector
+    private static final EngineBenchmark.GcStats JVM_GC = new EngineBenchmark.GcStats() {
+        @Override
+        public long count() {
+            long count = 0;
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, bean.getCollectionCount());
+            }
+            return count;
+        }
+
+        @Override
+        public long timeMillis() {
+            long time = 0;
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                time += Math.max(0, bean.getCollectionTime());
+            }
+            return time;
+        }
+    };
+
+    @Test
+    public void runTest() {
+        List<EngineBenchmark.Result> results = new EngineBenchmark(JVM_GC).runAll(20000, 2000);
+        assertEquals(EngineBenchmark.SIZES.length, results.size());
+        for (EngineBenchmark.Result result : results) {
+            assertEquals(20000, result.counts[EngineBenchmark.FALL] + result.counts[EngineBenchmark.LOCK]
+                + result.counts[EngineBenchmark.MOVE]);
+            for (int kind = 0; kind < EngineBenchmark.KIND_NAMES.length; kind++) {
+                assertTrue(result.counts[kind] > 0);
+                assertTrue(result.p50[kind] <= result.p99[kind]);
+            }
+            assertTrue(result.stepsPerSecond() > 0);
+            assertTrue(result.cellsChanged > 0);
+        }
+        assertTrue(results.get(0).games > 1);   // the normal board fills up and starts again
+    }
+
+    @Test
+    public void sameGamesTest() {
+        // Every run plays the same games, so runs from different builds can be compared
+        EngineBenchmark benchmark = new EngineBenchmark(null);
+        EngineBenchmark.Result first = benchmark.run(EngineBenchmark.SIZES[0], 50000);
+        EngineBenchmark.Result second = benchmark.run(EngineBenchmark.SIZES[0], 50000);
+        assertEquals(first.games, second.games);
+        assertEquals(first.clears, second.clears);
+        assertEquals(first.cellsChanged, second.cellsChanged);
+        assertArrayEquals(first.counts, second.counts);
+        assertTrue(first.clears > 0);
+    }
+
+    @Test
+    public void csvTest() throws Exception {
+        EngineBenchmark.Result result = new EngineBenchmark(null).run(EngineBenchmark.SIZES[1], 1000);
+        File file = folder.newFile("benchmark.csv");
+        EngineBenchmark.writeCsv(file, Arrays.asList("device test"), Arrays.asList(result, result));
+        List<String> lines = Files.readAllLines(file.toPath());
+        assertEquals(4, lines.size());
+        assertEquals("# device test", lines.get(0));
+        assertEquals(EngineBenchmark.Result.csvHeader(), lines.get(1));
+        assertEquals(lines.get(1).split(",").length, lines.get(2).split(",").length);
+        assertTrue(lines.get(2).startsWith("6x10x6,1000,"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.google.ar.sceneform.samples.hellosceneform.meshtools;
+
+/*
+ * GENERATE LOD TASK
+ * Gradle task that writes a lower detail copy of an OBJ model, so the sceneform.asset conversion
+ * can turn it into its own .sfb. The material library is copied next to the output so the
+ * converter finds the same materials as the full detail model.
+ */
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+
+public class GenerateLodTask extends DefaultTask {
+
+    private File sourceFile;
+    private float cellSize;
+    private File outputFile;
+
+    @InputFile
+    public File getSourceFile() {
+        return sourceFile;
+    }
+
+    public void setSourceFile(File sourceFile) {
+        this.sourceFile = sourceFile;
+    }
+
+    @Input
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    public void setCellSize(float cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    @OutputFile
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    public void setOutputFile(File outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    @TaskAction
+    public void generate() throws IOException {
+        ObjMesh source = ObjMesh.read(sourceFile);
+        ObjMesh lod = LodGenerator.cluster(source, cellSize);
+        lod.write(outputFile, "Generated from " + sourceFile.getName() + " by vertex clustering, cell size " + cellSize);
+
+        source.copyMaterialLibrary(sourceFile, outputFile);
+
+        getLogger().lifecycle("{}: {} vertices / {} triangles -> {} vertices / {} triangles",
+            outputFile.getName(),
+            source.positions.size(), source.triangleCount(),
+            lod.positions.size(), lod.triangleCount());
+    }
+}
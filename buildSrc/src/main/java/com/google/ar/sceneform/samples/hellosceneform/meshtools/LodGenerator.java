@@ -0,0 +1,132 @@
+package com.google.ar.sceneform.samples.hellosceneform.meshtools;
+
+/*
+ * LOD GENERATOR
+ * Builds lower detail versions of a mesh using vertex clustering. The model is cut up into a grid
+ * of cubes centred on multiples of the cell size, and every vertex inside one cube is snapped to
+ * one point. Along each axis that point is the cube's outermost vertex, measured from the middle
+ * of the mesh. Averaging would pull every corner inwards and make the simplified block smaller
+ * than the full detail one, so it would visibly shrink and leave gaps between neighbouring blocks
+ * when the LOD switches. Snapping outwards keeps the bounds exactly the same.
+ * Triangles that end up with two corners in the same cube have collapsed, so they get thrown away.
+ * This is cheap and keeps the overall shape, which is all we need for blocks seen from far away.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class LodGenerator {
+
+    private LodGenerator() {
+    }
+
+    /**
+     * cluster: Creates a simplified copy of the mesh
+     * @param source the full detail mesh. It is not modified
+     * @param cellSize edge length of the clustering cubes, in the same units as the mesh
+     * @return a new mesh made only of triangles
+     */
+    public static ObjMesh cluster(ObjMesh source, float cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("cellSize must be positive, was " + cellSize);
+        }
+
+        // Work out which cell each vertex lands in, and give each used cell an index
+        Map<String, Integer> cellIndex = new HashMap<>();
+        List<float[]> cellMins = new ArrayList<>();
+        List<float[]> cellMaxes = new ArrayList<>();
+        int[] vertexCell = new int[source.positions.size()];
+        for (int i = 0; i < source.positions.size(); i++) {
+            float[] p = source.positions.get(i);
+            String key = Math.round(p[0] / cellSize) + ","
+                + Math.round(p[1] / cellSize) + ","
+                + Math.round(p[2] / cellSize);
+            Integer cell = cellIndex.get(key);
+            if (cell == null) {
+                cell = cellMins.size();
+                cellIndex.put(key, cell);
+                cellMins.add(p.clone());
+                cellMaxes.add(p.clone());
+            }
+            float[] min = cellMins.get(cell);
+            float[] max = cellMaxes.get(cell);
+            for (int k = 0; k < 3; k++) {
+                min[k] = Math.min(min[k], p[k]);
+                max[k] = Math.max(max[k], p[k]);
+            }
+            vertexCell[i] = cell;
+        }
+        float[] centre = centre(source);
+
+        ObjMesh result = new ObjMesh();
+        result.objectName = source.objectName;
+        result.materialLibrary = source.materialLibrary;
+        result.texCoords.addAll(source.texCoords);
+        result.normals.addAll(source.normals);
+        for (int cell = 0; cell < cellMins.size(); cell++) {
+            float[] min = cellMins.get(cell);
+            float[] max = cellMaxes.get(cell);
+            float[] position = new float[3];
+            for (int k = 0; k < 3; k++) {
+                position[k] = min[k] + max[k] < 2 * centre[k] ? min[k] : max[k];   // whichever side of the middle the cell is on
+            }
+            result.positions.add(position);
+        }
+
+        // Fan every polygon into triangles and keep the ones that didn't collapse
+        Set<String> seenTriangles = new HashSet<>();
+        for (ObjMesh.Face face : source.faces) {
+            for (int i = 1; i < face.size() - 1; i++) {
+                int[] corners = {0, i, i + 1};
+                int a = vertexCell[face.position[corners[0]]];
+                int b = vertexCell[face.position[corners[1]]];
+                int c = vertexCell[face.position[corners[2]]];
+                if (a == b || b == c || a == c) {
+                    continue;   // degenerate after snapping
+                }
+                if (!seenTriangles.add(face.material + ":" + canonical(a, b, c))) {
+                    continue;   // another face already collapsed onto this exact triangle
+                }
+                int[] position = new int[3];
+                int[] texCoord = new int[3];
+                int[] normal = new int[3];
+                for (int k = 0; k < 3; k++) {
+                    position[k] = vertexCell[face.position[corners[k]]];
+                    texCoord[k] = face.texCoord[corners[k]];
+                    normal[k] = face.normal[corners[k]];
+                }
+                result.faces.add(new ObjMesh.Face(face.material, position, texCoord, normal));
+            }
+        }
+
+        result.removeUnused();
+        return result;
+    }
+
+    // The middle of the mesh's bounding box
+    private static float[] centre(ObjMesh mesh) {
+        float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (float[] p : mesh.positions) {
+            for (int k = 0; k < 3; k++) {
+                min[k] = Math.min(min[k], p[k]);
+                max[k] = Math.max(max[k], p[k]);
+            }
+        }
+        return new float[]{(min[0] + max[0]) / 2, (min[1] + max[1]) / 2, (min[2] + max[2]) / 2};
+    }
+
+    // Rotates the triangle so the smallest index is first. Keeps the winding, so back faces stay separate
+    private static String canonical(int a, int b, int c) {
+        if (a < b && a < c) {
+            return a + "," + b + "," + c;
+        } else if (b < c) {
+            return b + "," + c + "," + a;
+        }
+        return c + "," + a + "," + b;
+    }
+}
@@ -0,0 +1,296 @@
+package com.google.ar.sceneform.samples.hellosceneform.meshtools;
+
+/*
+ * MESH OPTIMIZER
+ * Cleans up an OBJ model before the sceneform converter sees it:
+ *  - welds positions that are closer together than a tolerance, which also closes seams Blender leaves between faces
+ *  - deduplicates normals and texture coords the same way
+ *  - splits polygons into triangles and drops the ones that welding collapsed
+ *  - reorders the triangles of each material for the GPU's post transform vertex cache (Tom Forsyth's
+ *    "Linear-Speed Vertex Cache Optimisation"), then renumbers the vertices in the order they're first used
+ *  - strips attributes that no face uses, and texture coords altogether when the material doesn't need them
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MeshOptimizer {
+
+    private static final int CACHE_SIZE = 32;               // what the scoring function simulates
+    private static final int REPORT_CACHE_SIZE = 16;        // FIFO size used for the before/after miss ratio, roughly a mobile GPU
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+    private static final float NORMAL_TOLERANCE = 0.001f;
+
+    private MeshOptimizer() {
+    }
+
+    /**
+     * optimize: Creates an optimised copy of the mesh
+     * @param source the mesh to optimise. It is not modified
+     * @param weldTolerance positions closer than this are merged into one
+     * @param keepTexCoords false to drop texture coordinates, for materials that aren't textured
+     * @return a new mesh made only of triangles
+     */
+    public static ObjMesh optimize(ObjMesh source, float weldTolerance, boolean keepTexCoords) {
+        ObjMesh result = new ObjMesh();
+        result.objectName = source.objectName;
+        result.materialLibrary = source.materialLibrary;
+
+        int[] positionMap = weld(source.positions, weldTolerance, result.positions);
+        int[] normalMap = weld(source.normals, NORMAL_TOLERANCE, result.normals);
+        int[] texCoordMap = keepTexCoords ? weld(source.texCoords, weldTolerance, result.texCoords) : null;
+
+        // Triangulate into per material lists, keeping the materials in the order they first appear
+        Map<String, List<ObjMesh.Face>> groups = new LinkedHashMap<>();
+        for (ObjMesh.Face face : source.faces) {
+            List<ObjMesh.Face> group = groups.get(face.material);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(face.material, group);
+            }
+            for (int i = 1; i < face.size() - 1; i++) {
+                int[] corners = {0, i, i + 1};
+                int[] position = new int[3];
+                int[] texCoord = new int[3];
+                int[] normal = new int[3];
+                for (int k = 0; k < 3; k++) {
+                    int corner = corners[k];
+                    position[k] = positionMap[face.position[corner]];
+                    texCoord[k] = texCoordMap != null && face.texCoord[corner] >= 0 ? texCoordMap[face.texCoord[corner]] : -1;
+                    normal[k] = face.normal[corner] >= 0 ? normalMap[face.normal[corner]] : -1;
+                }
+                if (position[0] == position[1] || position[1] == position[2] || position[0] == position[2]) {
+                    continue;   // welded shut
+                }
+                group.add(new ObjMesh.Face(face.material, position, texCoord, normal));
+            }
+        }
+
+        for (List<ObjMesh.Face> group : groups.values()) {
+            result.faces.addAll(reorderForCache(group));
+        }
+        result.removeUnused();
+        return result;
+    }
+
+    // Merges values that land in the same tolerance sized cell. Returns the old index -> new index map
+    private static int[] weld(List<float[]> values, float tolerance, List<float[]> out) {
+        Map<String, Integer> seen = new HashMap<>();
+        int[] map = new int[values.size()];
+        for (int i = 0; i < values.size(); i++) {
+            float[] value = values.get(i);
+            StringBuilder key = new StringBuilder();
+            for (float component : value) {
+                key.append(Math.round(component / tolerance)).append(',');
+            }
+            Integer index = seen.get(key.toString());
+            if (index == null) {
+                index = out.size();
+                seen.put(key.toString(), index);
+                out.add(value);
+            }
+            map[i] = index;
+        }
+        return map;
+    }
+
+    /**
+     * vertexCount: how many vertices the GPU ends up with. Every distinct position/texcoord/normal combination is its own vertex
+     * @param mesh the mesh to count
+     * @return the number of distinct corners
+     */
+    public static int vertexCount(ObjMesh mesh) {
+        Map<String, Integer> ids = new HashMap<>();
+        cornerIds(mesh.faces, ids);
+        return ids.size();
+    }
+
+    /**
+     * cacheMissRatio: the average number of vertex cache misses per triangle with a FIFO cache, the usual ACMR figure.
+     * 3.0 is as bad as it gets, and about 0.6 to 0.7 is as good as it gets for a closed mesh
+     * @param mesh the mesh to measure
+     * @return misses per triangle
+     */
+    public static float cacheMissRatio(ObjMesh mesh) {
+        List<ObjMesh.Face> triangles = new ArrayList<>();
+        for (ObjMesh.Face face : mesh.faces) {
+            for (int i = 1; i < face.size() - 1; i++) {
+                triangles.add(new ObjMesh.Face(face.material,
+                    new int[]{face.position[0], face.position[i], face.position[i + 1]},
+                    new int[]{face.texCoord[0], face.texCoord[i], face.texCoord[i + 1]},
+                    new int[]{face.normal[0], face.normal[i], face.normal[i + 1]}));
+            }
+        }
+        if (triangles.isEmpty()) {
+            return 0;
+        }
+        int[] corners = cornerIds(triangles, new HashMap<>());
+        int[] fifo = new int[REPORT_CACHE_SIZE];
+        Arrays.fill(fifo, -1);
+        int head = 0;
+        int misses = 0;
+        for (int corner : corners) {
+            boolean hit = false;
+            for (int cached : fifo) {
+                if (cached == corner) {
+                    hit = true;
+                    break;
+                }
+            }
+            if (!hit) {
+                misses++;
+                fifo[head] = corner;
+                head = (head + 1) % REPORT_CACHE_SIZE;
+            }
+        }
+        return (float) misses / triangles.size();
+    }
+
+    // Gives every distinct corner combination an id, and returns the id of each corner in face order
+    private static int[] cornerIds(List<ObjMesh.Face> faces, Map<String, Integer> ids) {
+        int total = 0;
+        for (ObjMesh.Face face : faces) {
+            total += face.size();
+        }
+        int[] result = new int[total];
+        int n = 0;
+        for (ObjMesh.Face face : faces) {
+            for (int i = 0; i < face.size(); i++) {
+                String key = face.position[i] + "/" + face.texCoord[i] + "/" + face.normal[i];
+                Integer id = ids.get(key);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(key, id);
+                }
+                result[n++] = id;
+            }
+        }
+        return result;
+    }
+
+    // Forsyth's greedy reordering. Each step emits the triangle whose vertices score highest, where a vertex
+    // scores well if it's recently used (still in the cache) and if few triangles are left that need it
+    private static List<ObjMesh.Face> reorderForCache(List<ObjMesh.Face> triangles) {
+        int triangleCount = triangles.size();
+        if (triangleCount < 3) {
+            return triangles;
+        }
+        int[] corners = cornerIds(triangles, new HashMap<>());
+        int vertexCount = 0;
+        for (int corner : corners) {
+            vertexCount = Math.max(vertexCount, corner + 1);
+        }
+
+        // Which triangles use each vertex
+        int[] remaining = new int[vertexCount];
+        for (int corner : corners) {
+            remaining[corner]++;
+        }
+        int[][] vertexTriangles = new int[vertexCount][];
+        int[] fill = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            vertexTriangles[v] = new int[remaining[v]];
+        }
+        for (int t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                int v = corners[t * 3 + k];
+                vertexTriangles[v][fill[v]++] = t;
+            }
+        }
+
+        int[] cachePosition = new int[vertexCount];
+        Arrays.fill(cachePosition, -1);
+        float[] vertexScore = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            vertexScore[v] = vertexScore(-1, remaining[v]);
+        }
+        boolean[] emitted = new boolean[triangleCount];
+        float[] triangleScore = new float[triangleCount];
+        for (int t = 0; t < triangleCount; t++) {
+            triangleScore[t] = vertexScore[corners[t * 3]] + vertexScore[corners[t * 3 + 1]] + vertexScore[corners[t * 3 + 2]];
+        }
+
+        List<ObjMesh.Face> ordered = new ArrayList<>(triangleCount);
+        int[] cache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+        int best = bestTriangle(triangleScore, emitted);
+        while (best >= 0) {
+            emitted[best] = true;
+            ordered.add(triangles.get(best));
+
+            // Move the triangle's vertices to the front of the cache and push everything else back
+            int[] newCache = new int[CACHE_SIZE + 3];
+            int newCount = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = corners[best * 3 + k];
+                newCache[newCount++] = v;
+                remaining[v]--;
+            }
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if (v != newCache[0] && v != newCache[1] && v != newCache[2]) {
+                    newCache[newCount++] = v;
+                }
+            }
+            for (int i = 0; i < newCount; i++) {
+                int v = newCache[i];
+                cachePosition[v] = i < CACHE_SIZE ? i : -1;
+                vertexScore[v] = vertexScore(cachePosition[v], remaining[v]);
+            }
+            cache = newCache;
+            cacheCount = Math.min(newCount, CACHE_SIZE);
+
+            // Only triangles touching the cache changed score, so the next pick is almost always one of them
+            int next = -1;
+            float nextScore = -1;
+            for (int i = 0; i < newCount; i++) {
+                for (int t : vertexTriangles[cache[i]]) {
+                    if (emitted[t]) {
+                        continue;
+                    }
+                    triangleScore[t] = vertexScore[corners[t * 3]] + vertexScore[corners[t * 3 + 1]] + vertexScore[corners[t * 3 + 2]];
+                    if (triangleScore[t] > nextScore) {
+                        nextScore = triangleScore[t];
+                        next = t;
+                    }
+                }
+            }
+            best = next >= 0 ? next : bestTriangle(triangleScore, emitted);
+        }
+        return ordered;
+    }
+
+    private static int bestTriangle(float[] scores, boolean[] emitted) {
+        int best = -1;
+        for (int t = 0; t < scores.length; t++) {
+            if (!emitted[t] && (best < 0 || scores[t] > scores[best])) {
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    private static float vertexScore(int cachePosition, int remainingTriangles) {
+        if (remainingTriangles == 0) {
+            return -1.0f;   // nothing left needs it
+        }
+        float score = 0.0f;
+        if (cachePosition >= 0) {
+            if (cachePosition < 3) {
+                score = LAST_TRIANGLE_SCORE;    // used by the last triangle. Fixed score so we don't favour strips too much
+            } else {
+                float scaler = 1.0f / (CACHE_SIZE - 3);
+                score = (float) Math.pow(1.0f - (cachePosition - 3) * scaler, CACHE_DECAY_POWER);
+            }
+        }
+        score += VALENCE_BOOST_SCALE * (float) Math.pow(remainingTriangles, -VALENCE_BOOST_POWER);
+        return score;
+    }
+}
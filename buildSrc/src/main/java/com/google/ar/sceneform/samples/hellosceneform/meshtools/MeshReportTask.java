@@ -0,0 +1,62 @@
+package com.google.ar.sceneform.samples.hellosceneform.meshtools;
+
+/*
+ * MESH REPORT TASK
+ * Prints what OptimizeMeshTask did to each model, along with the .sfb size converted from the
+ * unoptimised model next to the one this build made. Run it after the sceneform conversion so the
+ * "after" sizes are the freshly converted files. It has no outputs, so it runs on every build.
+ */
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Properties;
+
+public class MeshReportTask extends DefaultTask {
+
+    private File reportDir;
+
+    @Internal
+    public File getReportDir() {
+        return reportDir;
+    }
+
+    public void setReportDir(File reportDir) {
+        this.reportDir = reportDir;
+    }
+
+    @TaskAction
+    public void report() throws IOException {
+        File[] reports = reportDir.listFiles((dir, name) -> name.endsWith(".properties"));
+        if (reports == null || reports.length == 0) {
+            getLogger().lifecycle("No mesh optimisation reports in {}", reportDir);
+            return;
+        }
+        Arrays.sort(reports);
+        getLogger().lifecycle(String.format("%-20s %15s %15s %13s %19s", "model", "vertices", "triangles", "ACMR", ".sfb bytes"));
+        for (File file : reports) {
+            Properties report = new Properties();
+            try (Reader in = new FileReader(file)) {
+                report.load(in);
+            }
+            String sfbSizes = "-";
+            if (report.getProperty("sfb") != null) {
+                File sfb = new File(report.getProperty("sfb"));
+                String baseline = report.getProperty("sfb.baseline", "-1");
+                sfbSizes = (baseline.equals("-1") ? "?" : baseline) + " -> " + (sfb.isFile() ? sfb.length() : 0);
+            }
+            getLogger().lifecycle(String.format("%-20s %15s %15s %13s %19s",
+                report.getProperty("name"),
+                report.getProperty("vertices.before") + " -> " + report.getProperty("vertices.after"),
+                report.getProperty("triangles.before") + " -> " + report.getProperty("triangles.after"),
+                String.format("%.2f -> %.2f", Float.parseFloat(report.getProperty("acmr.before")), Float.parseFloat(report.getProperty("acmr.after"))),
+                sfbSizes));
+        }
+    }
+}
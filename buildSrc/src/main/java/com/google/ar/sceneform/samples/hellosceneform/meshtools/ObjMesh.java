@@ -0,0 +1,244 @@
+package com.google.ar.sceneform.samples.hellosceneform.meshtools;
+
+/*
+ * OBJ MESH
+ * A minimal in-memory copy of a Wavefront OBJ file. It only understands the parts of the format
+ * that Blender writes for our sampledata models: positions, normals, texture coords, faces and
+ * material groups. Everything else in the file is ignored.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+public class ObjMesh {
+
+    /**
+     * Face: a single polygon. Indices are 0 based and -1 means the attribute isn't present.
+     */
+    public static class Face {
+        public String material;
+        public int[] position;
+        public int[] texCoord;
+        public int[] normal;
+
+        public Face(String material, int[] position, int[] texCoord, int[] normal) {
+            this.material = material;
+            this.position = position;
+            this.texCoord = texCoord;
+            this.normal = normal;
+        }
+
+        public int size() {
+            return position.length;
+        }
+    }
+
+    public String objectName = "Mesh";
+    public String materialLibrary;          // the mtllib line, kept so the converter can still find the materials
+    public List<float[]> positions = new ArrayList<>();
+    public List<float[]> texCoords = new ArrayList<>();
+    public List<float[]> normals = new ArrayList<>();
+    public List<Face> faces = new ArrayList<>();
+
+    /**
+     * read: Parses an OBJ file from disk
+     * @param file the .obj file
+     * @return the parsed mesh
+     * @throws IOException if the file can't be read or has a line we can't make sense of
+     */
+    public static ObjMesh read(File file) throws IOException {
+        ObjMesh mesh = new ObjMesh();
+        String material = null;
+        int lineNumber = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String[] parts = line.trim().split("\\s+");
+                switch (parts[0]) {
+                    case "v":
+                        mesh.positions.add(parseFloats(parts, 3));
+                        break;
+                    case "vt":
+                        mesh.texCoords.add(parseFloats(parts, 2));
+                        break;
+                    case "vn":
+                        mesh.normals.add(parseFloats(parts, 3));
+                        break;
+                    case "f":
+                        mesh.faces.add(parseFace(mesh, material, parts, file, lineNumber));
+                        break;
+                    case "usemtl":
+                        material = parts.length > 1 ? parts[1] : null;
+                        break;
+                    case "mtllib":
+                        mesh.materialLibrary = parts.length > 1 ? parts[1] : null;
+                        break;
+                    case "o":
+                        mesh.objectName = parts.length > 1 ? parts[1] : mesh.objectName;
+                        break;
+                    default:
+                        break;      // comments, smoothing groups and anything else we don't need
+                }
+            }
+        }
+        return mesh;
+    }
+
+    private static float[] parseFloats(String[] parts, int count) {
+        float[] values = new float[count];
+        for (int i = 0; i < count && i + 1 < parts.length; i++) {
+            values[i] = Float.parseFloat(parts[i + 1]);
+        }
+        return values;
+    }
+
+    private static Face parseFace(ObjMesh mesh, String material, String[] parts, File file, int lineNumber) throws IOException {
+        int corners = parts.length - 1;
+        if (corners < 3) {
+            throw new IOException(file + ":" + lineNumber + ": face with less than 3 corners");
+        }
+        int[] position = new int[corners];
+        int[] texCoord = new int[corners];
+        int[] normal = new int[corners];
+        for (int i = 0; i < corners; i++) {
+            String[] refs = parts[i + 1].split("/", -1);
+            position[i] = resolveIndex(refs[0], mesh.positions.size());
+            texCoord[i] = refs.length > 1 ? resolveIndex(refs[1], mesh.texCoords.size()) : -1;
+            normal[i] = refs.length > 2 ? resolveIndex(refs[2], mesh.normals.size()) : -1;
+        }
+        return new Face(material, position, texCoord, normal);
+    }
+
+    // OBJ indices are 1 based, and negative ones count back from the end of the list
+    private static int resolveIndex(String ref, int count) {
+        if (ref.isEmpty()) {
+            return -1;
+        }
+        int index = Integer.parseInt(ref);
+        return index < 0 ? count + index : index - 1;
+    }
+
+    /**
+     * write: Writes the mesh back out as an OBJ file, grouping faces by material
+     * @param file where to write the .obj
+     * @param comment written as a comment at the top of the file
+     * @throws IOException if the file can't be written
+     */
+    public void write(File file, String comment) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            out.println("# " + comment);
+            if (materialLibrary != null) {
+                out.println("mtllib " + materialLibrary);
+            }
+            out.println("o " + objectName);
+            for (float[] p : positions) {
+                out.println(String.format(Locale.US, "v %.6f %.6f %.6f", p[0], p[1], p[2]));
+            }
+            for (float[] t : texCoords) {
+                out.println(String.format(Locale.US, "vt %.6f %.6f", t[0], t[1]));
+            }
+            for (float[] n : normals) {
+                out.println(String.format(Locale.US, "vn %.4f %.4f %.4f", n[0], n[1], n[2]));
+            }
+            String material = null;
+            boolean first = true;
+            for (Face face : faces) {
+                if (first || (face.material != null && !face.material.equals(material))) {
+                    if (face.material != null) {
+                        out.println("usemtl " + face.material);
+                    }
+                    if (first) {
+                        out.println("s off");
+                    }
+                    material = face.material;
+                    first = false;
+                }
+                StringBuilder line = new StringBuilder("f");
+                for (int i = 0; i < face.size(); i++) {
+                    line.append(' ').append(face.position[i] + 1);
+                    if (face.texCoord[i] >= 0 || face.normal[i] >= 0) {
+                        line.append('/');
+                        if (face.texCoord[i] >= 0) {
+                            line.append(face.texCoord[i] + 1);
+                        }
+                    }
+                    if (face.normal[i] >= 0) {
+                        line.append('/').append(face.normal[i] + 1);
+                    }
+                }
+                out.println(line);
+            }
+        }
+    }
+
+    /**
+     * copyMaterialLibrary: Copies the mesh's .mtl file next to a new .obj, so the converter finds the same materials there
+     * @param sourceFile the .obj the mesh was read from
+     * @param outputFile the .obj the mesh is being written to
+     * @throws IOException if the copy fails
+     */
+    public void copyMaterialLibrary(File sourceFile, File outputFile) throws IOException {
+        if (materialLibrary == null) {
+            return;
+        }
+        File material = new File(sourceFile.getParentFile(), materialLibrary);
+        Files.copy(material.toPath(), new File(outputFile.getParentFile(), materialLibrary).toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * triangleCount: how many triangles the mesh turns into once every polygon is fanned out
+     * @return the number of triangles
+     */
+    public int triangleCount() {
+        int count = 0;
+        for (Face face : faces) {
+            count += face.size() - 2;
+        }
+        return count;
+    }
+
+    /**
+     * removeUnused: Drops positions, texture coords and normals that no face points at, and renumbers the faces to match
+     */
+    public void removeUnused() {
+        positions = compact(positions, faces, 0);
+        texCoords = compact(texCoords, faces, 1);
+        normals = compact(normals, faces, 2);
+    }
+
+    private static List<float[]> compact(List<float[]> values, List<Face> faces, int attribute) {
+        int[] remap = new int[values.size()];
+        Arrays.fill(remap, -1);
+        List<float[]> kept = new ArrayList<>();
+        for (Face face : faces) {
+            int[] indices = attribute == 0 ? face.position : attribute == 1 ? face.texCoord : face.normal;
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] < 0) {
+                    continue;
+                }
+                if (remap[indices[i]] < 0) {
+                    remap[indices[i]] = kept.size();
+                    kept.add(values.get(indices[i]));
+                }
+                indices[i] = remap[indices[i]];
+            }
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,123 @@
+package com.google.ar.sceneform.samples.hellosceneform.meshtools;
+
+/*
+ * OPTIMIZE MESH TASK
+ * Gradle task that runs MeshOptimizer over an OBJ model before the sceneform.asset conversion.
+ * It records the before/after numbers, plus the size of the .sfb converted from the unoptimised
+ * model (sampledata/sfb-baseline.properties), so MeshReportTask can print the whole picture once
+ * the converter has run. The baseline is fixed rather than whatever .sfb is on disk, which after
+ * the first build is just the last optimised one.
+ */
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Properties;
+
+public class OptimizeMeshTask extends DefaultTask {
+
+    private File sourceFile;
+    private File outputFile;
+    private File sfbFile;
+    private File reportFile;
+    private long sfbBaseline = -1;          // bytes, -1 when the model was never converted unoptimised
+    private float weldTolerance = 0.0001f;
+    private boolean keepTexCoords = false;  // none of our materials are textured
+
+    @InputFile
+    public File getSourceFile() {
+        return sourceFile;
+    }
+
+    public void setSourceFile(File sourceFile) {
+        this.sourceFile = sourceFile;
+    }
+
+    @OutputFile
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    public void setOutputFile(File outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    // The converter writes this, we only look at its size
+    @Internal
+    public File getSfbFile() {
+        return sfbFile;
+    }
+
+    public void setSfbFile(File sfbFile) {
+        this.sfbFile = sfbFile;
+    }
+
+    @OutputFile
+    public File getReportFile() {
+        return reportFile;
+    }
+
+    public void setReportFile(File reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    @Input
+    public long getSfbBaseline() {
+        return sfbBaseline;
+    }
+
+    public void setSfbBaseline(long sfbBaseline) {
+        this.sfbBaseline = sfbBaseline;
+    }
+
+    @Input
+    public float getWeldTolerance() {
+        return weldTolerance;
+    }
+
+    public void setWeldTolerance(float weldTolerance) {
+        this.weldTolerance = weldTolerance;
+    }
+
+    @Input
+    public boolean getKeepTexCoords() {
+        return keepTexCoords;
+    }
+
+    public void setKeepTexCoords(boolean keepTexCoords) {
+        this.keepTexCoords = keepTexCoords;
+    }
+
+    @TaskAction
+    public void optimize() throws IOException {
+        ObjMesh source = ObjMesh.read(sourceFile);
+        ObjMesh optimized = MeshOptimizer.optimize(source, weldTolerance, keepTexCoords);
+        optimized.write(outputFile, "Optimised from " + sourceFile.getName());
+        source.copyMaterialLibrary(sourceFile, outputFile);
+
+        Properties report = new Properties();
+        report.setProperty("name", outputFile.getName());
+        report.setProperty("vertices.before", String.valueOf(MeshOptimizer.vertexCount(source)));
+        report.setProperty("vertices.after", String.valueOf(MeshOptimizer.vertexCount(optimized)));
+        report.setProperty("triangles.before", String.valueOf(source.triangleCount()));
+        report.setProperty("triangles.after", String.valueOf(optimized.triangleCount()));
+        report.setProperty("acmr.before", String.valueOf(MeshOptimizer.cacheMissRatio(source)));
+        report.setProperty("acmr.after", String.valueOf(MeshOptimizer.cacheMissRatio(optimized)));
+        if (sfbFile != null) {
+            report.setProperty("sfb", sfbFile.getAbsolutePath());
+            report.setProperty("sfb.baseline", String.valueOf(sfbBaseline));
+        }
+        reportFile.getParentFile().mkdirs();
+        try (Writer out = new FileWriter(reportFile)) {
+            report.store(out, "Written by " + getPath());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.google.ar.sceneform.samples.hellosceneform.meshtools;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class LodGeneratorTest {
+
+    // Tests run from the buildSrc folder
+    private static final File BLOCK = new File("../app/sampledata/block.obj");
+
+    // min x, y, z then max x, y, z
+    private static float[] bounds(ObjMesh mesh) {
+        float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (float[] p : mesh.positions) {
+            for (int k = 0; k < 3; k++) {
+                bounds[k] = Math.min(bounds[k], p[k]);
+                bounds[k + 3] = Math.max(bounds[k + 3], p[k]);
+            }
+        }
+        return bounds;
+    }
+
+    @Test
+    public void blockBoundsTest() throws Exception {
+        // The low detail block has to be exactly as big as the full one, or it pops and leaves gaps when the LOD switches
+        ObjMesh source = ObjMesh.read(BLOCK);
+        ObjMesh lod = LodGenerator.cluster(source, 0.25f);
+        assertArrayEquals(bounds(source), bounds(lod), 1e-6f);
+        assertEquals(8, lod.positions.size());
+        assertEquals(12, lod.triangleCount());
+    }
+
+    @Test
+    public void movedBoundsTest() throws Exception {
+        // Bounds are kept wherever the mesh is, not just when it sits on the origin
+        ObjMesh source = ObjMesh.read(BLOCK);
+        for (float[] p : source.positions) {
+            p[0] = p[0] * 2 + 5;
+            p[1] = p[1] * 2 - 3;
+            p[2] = p[2] * 2 + 0.3f;
+        }
+        ObjMesh lod = LodGenerator.cluster(source, 0.5f);
+        assertArrayEquals(bounds(source), bounds(lod), 1e-5f);
+        assertTrue(lod.triangleCount() < source.triangleCount());
+    }
+}
@@ -0,0 +1,115 @@
+package com.google.ar.sceneform.samples.hellosceneform.meshtools;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MeshOptimizerTest {
+
+    private static final float TOLERANCE = 0.0001f;
+
+    // A unit cube the way Blender exports it with split normals: every face has its own four corners and its own
+    // copy of the normal, and the corners are a hair off each other
+    private static ObjMesh splitCube() {
+        ObjMesh mesh = new ObjMesh();
+        int[][] faces = {{0, 1, 3, 2}, {4, 6, 7, 5}, {0, 4, 5, 1}, {2, 3, 7, 6}, {0, 2, 6, 4}, {1, 5, 7, 3}};
+        float[][] normals = {{-1, 0, 0}, {1, 0, 0}, {0, -1, 0}, {0, 1, 0}, {0, 0, -1}, {0, 0, 1}};
+        Random random = new Random(1);
+        for (int f = 0; f < faces.length; f++) {
+            int[] position = new int[4];
+            int[] texCoord = new int[4];
+            int[] normal = new int[4];
+            for (int k = 0; k < 4; k++) {
+                int corner = faces[f][k];
+                mesh.positions.add(new float[]{
+                    (corner >> 2 & 1) + random.nextFloat() * TOLERANCE / 10,
+                    (corner >> 1 & 1) + random.nextFloat() * TOLERANCE / 10,
+                    (corner & 1) + random.nextFloat() * TOLERANCE / 10});
+                mesh.texCoords.add(new float[]{k & 1, k >> 1});
+                mesh.normals.add(normals[f].clone());
+                position[k] = mesh.positions.size() - 1;
+                texCoord[k] = mesh.texCoords.size() - 1;
+                normal[k] = mesh.normals.size() - 1;
+            }
+            mesh.faces.add(new ObjMesh.Face("cube", position, texCoord, normal));
+        }
+        return mesh;
+    }
+
+    // A flat grid of quads, two triangles each, in a scrambled order
+    private static ObjMesh shuffledGrid(int size) {
+        ObjMesh mesh = new ObjMesh();
+        for (int y = 0; y <= size; y++) {
+            for (int x = 0; x <= size; x++) {
+                mesh.positions.add(new float[]{x, y, 0});
+            }
+        }
+        mesh.normals.add(new float[]{0, 0, 1});
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int corner = y * (size + 1) + x;
+                mesh.faces.add(new ObjMesh.Face("grid", new int[]{corner, corner + 1, corner + size + 2},
+                    new int[]{-1, -1, -1}, new int[]{0, 0, 0}));
+                mesh.faces.add(new ObjMesh.Face("grid", new int[]{corner, corner + size + 2, corner + size + 1},
+                    new int[]{-1, -1, -1}, new int[]{0, 0, 0}));
+            }
+        }
+        Collections.shuffle(mesh.faces, new Random(2));
+        return mesh;
+    }
+
+    @Test
+    public void weldTest() {
+        ObjMesh source = splitCube();
+        // A sliver whose corners weld together has to go. Position 6 is the (1, 1, 1) corner
+        source.positions.add(new float[]{1 + TOLERANCE / 10, 1, 1});
+        source.faces.add(new ObjMesh.Face("cube", new int[]{6, source.positions.size() - 1, 0},
+            new int[]{-1, -1, -1}, new int[]{0, 0, 0}));
+
+        ObjMesh optimized = MeshOptimizer.optimize(source, TOLERANCE, false);
+        assertEquals(8, optimized.positions.size());
+        assertEquals(6, optimized.normals.size());
+        assertTrue(optimized.texCoords.isEmpty());
+        assertEquals(12, optimized.triangleCount());
+        assertEquals(24, MeshOptimizer.vertexCount(optimized));    // each corner still has three normals, one per face
+        for (ObjMesh.Face face : optimized.faces) {
+            assertEquals(3, face.size());
+            for (int k = 0; k < 3; k++) {
+                assertEquals(-1, face.texCoord[k]);
+            }
+        }
+
+        // Texture coords are deduplicated too when they're kept
+        ObjMesh textured = MeshOptimizer.optimize(splitCube(), TOLERANCE, true);
+        assertEquals(4, textured.texCoords.size());
+    }
+
+    @Test
+    public void cacheMissRatioTest() {
+        ObjMesh source = shuffledGrid(30);
+        float before = MeshOptimizer.cacheMissRatio(source);
+        ObjMesh optimized = MeshOptimizer.optimize(source, TOLERANCE, false);
+        float after = MeshOptimizer.cacheMissRatio(optimized);
+        assertEquals(source.triangleCount(), optimized.triangleCount());
+        assertTrue("ACMR " + before + " -> " + after, after < before);
+        assertTrue("ACMR " + after, after < 1.0f);
+
+        // An already good order doesn't get worse, on either of our models
+        assertTrue(MeshOptimizer.cacheMissRatio(MeshOptimizer.optimize(optimized, TOLERANCE, false)) <= after + 0.01f);
+        for (String name : new String[]{"block.obj", "Wireframe.obj"}) {
+            ObjMesh model;
+            try {
+                model = ObjMesh.read(new File("../app/sampledata", name));
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+            float modelBefore = MeshOptimizer.cacheMissRatio(model);
+            float modelAfter = MeshOptimizer.cacheMissRatio(MeshOptimizer.optimize(model, TOLERANCE, false));
+            assertTrue(name + " ACMR " + modelBefore + " -> " + modelAfter, modelAfter <= modelBefore);
+        }
+    }
+}